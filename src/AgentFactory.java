@@ -0,0 +1,16 @@
+/**
+ * Creates agents for new games. Tournaments play many games at once, each with its own Connect4Game, so every game
+ * needs fresh agents bound to that game. Any agent constructor taking a game and a color can be used, for example
+ * {@code TeacherAgent::new}.
+ */
+public interface AgentFactory {
+
+    /**
+     * Creates an agent for a game.
+     *
+     * @param game   Connect4Game
+     * @param iAmRed boolean
+     * @return Agent
+     */
+    Agent create(Connect4Game game, boolean iAmRed);
+}
@@ -0,0 +1,143 @@
+import java.lang.management.ManagementFactory;
+
+/**
+ * Checks that MiniConnorMaxAgent's search does not allocate as it visits nodes. Every position of SearchBenchmark's
+ * suites is searched to a fixed depth with each search algorithm. The whole suite is first searched once with
+ * throwaway agents, so classes are loaded and the JIT has compiled every path before anything is counted. Then each
+ * position gets a fresh agent, which moves a few times to set up its tables and is then measured several times,
+ * keeping the fewest bytes. One-off allocations of the JVM, such as a late compilation, land in a single measurement
+ * and are dropped, so the result does not change from run to run.
+ * <p>
+ * A move allocates about 150 bytes outside the search, such as the bitboard copy of the game. The default limit of
+ * 1024 bytes leaves room for a few more small objects per move, while one allocation per node, thousands of nodes
+ * even at low depths, would be far over it. The check fails, with exit status 1, if any move allocates more than the
+ * limit.
+ * <p>
+ * Usage: java AllocationCheck [depth] [limit in bytes per move]
+ */
+public class AllocationCheck {
+
+    private static final int WARM_UP_MOVES = 5; // Moves searched per position before measuring, in both passes.
+    private static final int MEASURED_MOVES = 3; // Moves measured per position; the fewest bytes are kept.
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        long limit = args.length > 1 ? Long.parseLong(args[1]) : 1024;
+
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)
+                || !((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            System.out.println("This JVM cannot count allocated bytes per thread.");
+            System.exit(2);
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+
+        String[] all = new String[SearchBenchmark.POSITIONS.length + SearchBenchmark.TACTICAL.length];
+        System.arraycopy(SearchBenchmark.POSITIONS, 0, all, 0, SearchBenchmark.POSITIONS.length);
+        System.arraycopy(SearchBenchmark.TACTICAL, 0, all, SearchBenchmark.POSITIONS.length,
+                SearchBenchmark.TACTICAL.length);
+        for (String moves : all) { // Warms up the JIT over the whole suite.
+            for (MinimaxSearch.Algorithm algorithm : MinimaxSearch.Algorithm.values()) {
+                Connect4Game game = SearchBenchmark.position(moves);
+                MiniConnorMaxAgent agent = agent(game, moves, depth, algorithm);
+                for (int i = 0; i < WARM_UP_MOVES; i++) {
+                    moveAndTakeBack(agent, game);
+                }
+            }
+        }
+
+        System.out.printf("%-26s %-8s %12s %10s%n", "Position", "Search", "Nodes", "Bytes");
+        long worst = 0;
+        for (String moves : all) {
+            for (MinimaxSearch.Algorithm algorithm : MinimaxSearch.Algorithm.values()) {
+                Connect4Game game = SearchBenchmark.position(moves);
+                MiniConnorMaxAgent agent = agent(game, moves, depth, algorithm);
+                for (int i = 0; i < WARM_UP_MOVES; i++) {
+                    moveAndTakeBack(agent, game);
+                }
+                long bytes = Long.MAX_VALUE;
+                for (int i = 0; i < MEASURED_MOVES; i++) {
+                    int[] heights = heights(game);
+                    long before = threads.getThreadAllocatedBytes(thread);
+                    agent.move();
+                    bytes = Math.min(bytes, threads.getThreadAllocatedBytes(thread) - before);
+                    if (takeBack(game, heights) < 0) {
+                        System.out.println("The agent did not move.");
+                        System.exit(1);
+                    }
+                }
+                worst = Math.max(worst, bytes);
+                System.out.printf("%-26s %-8s %12d %10d%s%n", moves.isEmpty() ? "(start)" : moves, algorithm,
+                        agent.getNodes(), bytes, bytes > limit ? "  over the limit" : "");
+            }
+        }
+        System.out.printf("Most allocated by one move: %d bytes, limit %d%n", worst, limit);
+        if (worst > limit) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Builds an agent that searches every move from scratch to a fixed depth.
+     *
+     * @param game      Connect4Game set up at the position
+     * @param moves     String the moves of the position
+     * @param depth     int
+     * @param algorithm MinimaxSearch.Algorithm
+     * @return MiniConnorMaxAgent
+     */
+    private static MiniConnorMaxAgent agent(Connect4Game game, String moves, int depth,
+                                            MinimaxSearch.Algorithm algorithm) {
+        MiniConnorMaxAgent agent = new MiniConnorMaxAgent(game, moves.length() % 2 == 0, depth);
+        agent.setSolverThreshold(0);
+        agent.setTableReuse(false); // Every move searches the whole tree again.
+        agent.setAlgorithm(algorithm);
+        return agent;
+    }
+
+    /**
+     * Lets the agent move, then takes the move back so the next search starts from the same position.
+     *
+     * @param agent MiniConnorMaxAgent
+     * @param game  Connect4Game
+     * @return the column played, or -1 if the agent did not move
+     */
+    private static int moveAndTakeBack(MiniConnorMaxAgent agent, Connect4Game game) {
+        int[] heights = heights(game);
+        agent.move();
+        return takeBack(game, heights);
+    }
+
+    /**
+     * @param game Connect4Game
+     * @return the number of tokens in each column.
+     */
+    private static int[] heights(Connect4Game game) {
+        Connect4Bitboard board = game.getBitboard();
+        int[] heights = new int[board.getColumnCount()];
+        for (int col = 0; col < heights.length; col++) {
+            heights[col] = board.getHeight(col);
+        }
+        return heights;
+    }
+
+    /**
+     * Takes back the move the agent made, so the next search starts from the same position.
+     *
+     * @param game    Connect4Game
+     * @param heights int[] the column heights before the move
+     * @return the column played, or -1 if the agent did not move
+     */
+    private static int takeBack(Connect4Game game, int[] heights) {
+        Connect4Bitboard board = game.getBitboard();
+        for (int col = 0; col < heights.length; col++) {
+            if (board.getHeight(col) != heights[col]) {
+                game.undoMove(col);
+                return col;
+            }
+        }
+        return -1;
+    }
+}
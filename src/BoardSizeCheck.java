@@ -0,0 +1,49 @@
+/**
+ * Checks how the search agents handle boards too large for a bitboard, such as 8x8 or anything taller than 19 rows.
+ * MiniConnorMaxAgent has to play whole games on them with its slot search and never make an invalid move, and
+ * MonteCarloAgent, which only runs on bitboards, has to be refused with an IllegalArgumentException when it is built
+ * rather than fail in the middle of a game. The check fails, with exit status 1, if either does not hold.
+ * <p>
+ * Usage: java BoardSizeCheck [games per board] [depth]
+ */
+public class BoardSizeCheck {
+
+    private static final int[][] SIZES = {{8, 8}, {3, 20}, {9, 7}}; // Boards that do not fit in a bitboard.
+
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+
+        boolean failed = false;
+        for (int[] size : SIZES) {
+            int columns = size[0];
+            int rows = size[1];
+            String board = columns + "x" + rows;
+            if (Connect4Bitboard.fits(columns, rows)) {
+                System.out.println(board + " fits in a bitboard, so it checks nothing here.");
+                failed = true;
+                continue;
+            }
+
+            Tournament tournament = new Tournament((game, red) -> new MiniConnorMaxAgent(game, red, depth),
+                    RandomAgent::new, columns, rows);
+            Tournament.Results results = tournament.play(games, 1, columns * 31L + rows);
+            System.out.printf("%-6s MiniConnorMax %d-%d-%d against random, %d invalid%n", board,
+                    results.getRedWins(), results.getDraws(), results.getYellowWins(), results.getInvalid());
+            if (results.getInvalid() > 0) {
+                failed = true;
+            }
+
+            try {
+                new MonteCarloAgent(new Connect4Game(columns, rows), true);
+                System.out.printf("%-6s MonteCarloAgent was built for a board it cannot play%n", board);
+                failed = true;
+            } catch (IllegalArgumentException e) {
+                System.out.printf("%-6s MonteCarloAgent refused: %s%n", board, e.getMessage());
+            }
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,523 @@
+import java.util.Arrays;
+
+/**
+ * A compact bitboard form of a Connect 4 board.
+ *
+ * Each column uses height + 1 bits of a long, starting from the bottom row. The extra bit on top of
+ * every column is always empty, so lines of four can be found with shifts without wrapping into
+ * the next column. Red and yellow tokens are stored in their own long, and the height of every
+ * column is kept in a small array so a move only touches a few words of memory.
+ *
+ * Rows and columns passed to the methods of this class use the same layout as Connect4Game:
+ * row 0 is the top row of the board.
+ */
+public class Connect4Bitboard
+{
+    private final int width;
+    private final int height;
+    private final int stride;
+    private final int[] heights;
+    private final long bottom;  // the bottom slot of every column
+    private long red;
+    private long yellow;
+    private int moveCount;
+
+    /**
+     * Check whether a board of the given size fits in a bitboard. Besides the slots fitting in a
+     * long, the longest shift used to find lines, three diagonal steps of height + 2 bits, must
+     * stay below 64, since Java only keeps the low six bits of a shift count and a longer shift
+     * would wrap around. That rules out boards taller than 19 rows.
+     *
+     *
+     * @param numCols The number of columns in the game board
+     * @param numRows The number of rows in the game board
+     * @return true if the board can be stored in a bitboard, false otherwise.
+     */
+    public static boolean fits(int numCols, int numRows)
+    {
+        return numCols > 0 && numRows > 0 && numCols * (numRows + 1) <= Long.SIZE
+                && 3 * (numRows + 2) < Long.SIZE;
+    }
+
+    /**
+     * Construct an empty bitboard with the given size.
+     *
+     *
+     * @param numCols The number of columns in the game board
+     * @param numRows The number of rows in the game board
+     */
+    public Connect4Bitboard(int numCols, int numRows)
+    {
+        if (!fits(numCols, numRows))
+        {
+            throw new IllegalArgumentException("A " + numCols + "x" + numRows + " board does not fit in a bitboard.");
+        }
+        this.width = numCols;
+        this.height = numRows;
+        this.stride = numRows + 1;
+        this.heights = new int[numCols];
+        long b = 0;
+        for (int i = 0; i < numCols; i++)
+        {
+            b |= 1L << (i * stride);
+        }
+        this.bottom = b;
+    }
+
+    /**
+     * Copy an existing bitboard.
+     *
+     *
+     * @param board The bitboard to copy.
+     */
+    public Connect4Bitboard(Connect4Bitboard board)
+    {
+        this(board.width, board.height);
+        copyFrom(board);
+    }
+
+    /**
+     * Overwrite this bitboard with the contents of another bitboard of the same size.
+     *
+     *
+     * @param board The bitboard to copy.
+     */
+    public void copyFrom(Connect4Bitboard board)
+    {
+        if (board.width != width || board.height != height)
+        {
+            throw new IllegalArgumentException("Cannot copy a bitboard of a different size.");
+        }
+        System.arraycopy(board.heights, 0, heights, 0, width);
+        red = board.red;
+        yellow = board.yellow;
+        moveCount = board.moveCount;
+    }
+
+    /**
+     * Get the total number of columns in the board.
+     *
+     *
+     * @return the number of columns in the board.
+     */
+    public int getColumnCount()
+    {
+        return width;
+    }
+
+    /**
+     * Get the total number of rows in the board.
+     *
+     *
+     * @return the number of rows in the board.
+     */
+    public int getRowCount()
+    {
+        return height;
+    }
+
+    /**
+     * Get the number of bits used by each column, including the empty bit on top.
+     *
+     *
+     * @return the number of bits per column.
+     */
+    public int getStride()
+    {
+        return stride;
+    }
+
+    /**
+     * Get the tokens placed by red.
+     *
+     *
+     * @return a bitmask of the red tokens.
+     */
+    public long getRed()
+    {
+        return red;
+    }
+
+    /**
+     * Get the tokens placed by yellow.
+     *
+     *
+     * @return a bitmask of the yellow tokens.
+     */
+    public long getYellow()
+    {
+        return yellow;
+    }
+
+    /**
+     * Get all the tokens on the board.
+     *
+     *
+     * @return a bitmask of every filled slot.
+     */
+    public long getMask()
+    {
+        return red | yellow;
+    }
+
+    /**
+     * Get a bitmask of every slot on the board, leaving out the empty bit on top of each column.
+     *
+     *
+     * @return a bitmask of every slot.
+     */
+    public long getBoardMask()
+    {
+        return bottom * ((1L << height) - 1);
+    }
+
+    /**
+     * Get a bitmask of the slots a token can be dropped into right now, one per column that is not full.
+     *
+     *
+     * @return a bitmask of the lowest empty slot of every open column.
+     */
+    public long getPlayableMask()
+    {
+        return ((red | yellow) + bottom) & getBoardMask();
+    }
+
+    /**
+     * Get every empty slot that would complete four in a row for a player, whether or not a token
+     * can be dropped there yet.
+     *
+     *
+     * @param isRed true for red's winning slots, false for yellow's.
+     * @return a bitmask of the winning slots.
+     */
+    public long getWinningSlots(boolean isRed)
+    {
+        long p = isRed ? red : yellow;
+        // vertical: three tokens right below
+        long r = (p << 1) & (p << 2) & (p << 3);
+        for (int s = stride - 1; s <= stride + 1; s++)
+        {
+            // three in a row on either side, or two on one side and one on the other
+            long t = (p << s) & (p << (2 * s));
+            r |= t & (p << (3 * s));
+            r |= t & (p >>> s);
+            t = (p >>> s) & (p >>> (2 * s));
+            r |= t & (p << s);
+            r |= t & (p >>> (3 * s));
+        }
+        return r & getBoardMask() & ~(red | yellow);
+    }
+
+    /**
+     * Get a key that is different for every position. Adding the bottom row to the mask sets the
+     * first empty bit of each column, and the red tokens fill in the bits below it.
+     *
+     *
+     * @return a unique key for the position.
+     */
+    public long getKey()
+    {
+        return ((red | yellow) + bottom) | red;
+    }
+
+    /**
+     * Get the number of tokens on the board.
+     *
+     *
+     * @return the number of tokens on the board.
+     */
+    public int getMoveCount()
+    {
+        return moveCount;
+    }
+
+    /**
+     * Get the number of tokens in a column.
+     *
+     *
+     * @param column the column to check.
+     * @return the number of tokens in the column.
+     */
+    public int getHeight(int column)
+    {
+        return heights[column];
+    }
+
+    /**
+     * Get the row, in Connect4Game order, of the lowest empty slot of a column.
+     *
+     *
+     * @param column the column to check.
+     * @return the row of the lowest empty slot, or -1 if the column is full.
+     */
+    public int getTopRow(int column)
+    {
+        return height - 1 - heights[column];
+    }
+
+    /**
+     * Check if a token can be played in a column.
+     *
+     *
+     * @param column the column to check.
+     * @return true if the column has an empty slot, false otherwise.
+     */
+    public boolean canPlay(int column)
+    {
+        return heights[column] < height;
+    }
+
+    /**
+     * Check if the board is full.
+     *
+     *
+     * @return true if the board is full, false otherwise.
+     */
+    public boolean isFull()
+    {
+        return moveCount == width * height;
+    }
+
+    /**
+     * Drop a token in a column. The column must not be full.
+     *
+     *
+     * @param column the column to play in.
+     * @param isRed true to play a red token, false to play a yellow token.
+     */
+    public void makeMove(int column, boolean isRed)
+    {
+        long bit = 1L << (column * stride + heights[column]);
+        if (isRed)
+        {
+            red |= bit;
+        }
+        else
+        {
+            yellow |= bit;
+        }
+        heights[column]++;
+        moveCount++;
+    }
+
+    /**
+     * Remove the top token of a column. The column must not be empty.
+     *
+     *
+     * @param column the column to take the token from.
+     */
+    public void undoMove(int column)
+    {
+        heights[column]--;
+        moveCount--;
+        long bit = ~(1L << (column * stride + heights[column]));
+        red &= bit;
+        yellow &= bit;
+    }
+
+    /**
+     * Check if a slot is filled.
+     *
+     *
+     * @param column the column of the slot.
+     * @param row the row of the slot, where row 0 is the top row.
+     * @return true if the slot is filled, false otherwise.
+     */
+    public boolean isFilled(int column, int row)
+    {
+        return ((red | yellow) & bit(column, row)) != 0;
+    }
+
+    /**
+     * Check if a slot holds a red token.
+     *
+     *
+     * @param column the column of the slot.
+     * @param row the row of the slot, where row 0 is the top row.
+     * @return true if the slot holds a red token, false otherwise.
+     */
+    public boolean isRed(int column, int row)
+    {
+        return (red & bit(column, row)) != 0;
+    }
+
+    /**
+     * Put a token in any slot, even one that is not the lowest empty slot of its column. This is
+     * used to mirror boards that are edited one slot at a time.
+     *
+     *
+     * @param column the column of the slot.
+     * @param row the row of the slot, where row 0 is the top row.
+     * @param isRed true to place a red token, false to place a yellow token.
+     */
+    public void set(int column, int row, boolean isRed)
+    {
+        long bit = bit(column, row);
+        if (((red | yellow) & bit) == 0)
+        {
+            moveCount++;
+        }
+        if (isRed)
+        {
+            red |= bit;
+            yellow &= ~bit;
+        }
+        else
+        {
+            yellow |= bit;
+            red &= ~bit;
+        }
+        updateHeight(column);
+    }
+
+    /**
+     * Empty any slot of the board.
+     *
+     *
+     * @param column the column of the slot.
+     * @param row the row of the slot, where row 0 is the top row.
+     */
+    public void clear(int column, int row)
+    {
+        long bit = bit(column, row);
+        if (((red | yellow) & bit) != 0)
+        {
+            moveCount--;
+        }
+        red &= ~bit;
+        yellow &= ~bit;
+        updateHeight(column);
+    }
+
+    /**
+     * Empty the whole board.
+     *
+     */
+    public void clear()
+    {
+        red = 0;
+        yellow = 0;
+        moveCount = 0;
+        Arrays.fill(heights, 0);
+    }
+
+    /**
+     * Check if one player has four in a row. Only the tokens of that player are looked at, so
+     * after a move it is enough to check the player who just moved.
+     *
+     *
+     * @param isRed true to check red, false to check yellow.
+     * @return true if the player has four in a row, false otherwise.
+     */
+    public boolean hasWon(boolean isRed)
+    {
+        return hasFour(isRed ? red : yellow, stride);
+    }
+
+    /**
+     * Check if dropping a token in a column would win the game, without making the move.
+     *
+     *
+     * @param column the column to play in. The column must not be full.
+     * @param isRed true for a red token, false for a yellow token.
+     * @return true if the move makes four in a row, false otherwise.
+     */
+    public boolean isWinningMove(int column, boolean isRed)
+    {
+        long bit = 1L << (column * stride + heights[column]);
+        return hasFour((isRed ? red : yellow) | bit, stride);
+    }
+
+    /**
+     * Check if the game has been won.
+     *
+     *
+     * @return 'R' if red won, 'Y' if yellow won, 'N' if the game has not been won.
+     */
+    public char winner()
+    {
+        if (hasFour(red, stride))
+        {
+            return 'R';
+        }
+        if (hasFour(yellow, stride))
+        {
+            return 'Y';
+        }
+        return 'N';
+    }
+
+    /**
+     * Retrieve a matrix form of the board, in the same format as Connect4Game.getBoardMatrix().
+     *
+     *
+     * @return a character matrix of the board.
+     */
+    public char[][] getBoardMatrix()
+    {
+        char[][] board = new char[height][width];
+        for (int i = 0; i < width; i++)
+        {
+            for (int j = 0; j < height; j++)
+            {
+                if (isRed(i, j))
+                {
+                    board[j][i] = 'R';
+                }
+                else if (isFilled(i, j))
+                {
+                    board[j][i] = 'Y';
+                }
+                else
+                {
+                    board[j][i] = 'B';
+                }
+            }
+        }
+        return board;
+    }
+
+    /**
+     * Check if a set of tokens contains four in a row in any direction.
+     *
+     *
+     * @param discs the tokens of one player.
+     * @param stride the number of bits per column.
+     * @return true if there are four tokens in a row, false otherwise.
+     */
+    public static boolean hasFour(long discs, int stride)
+    {
+        // vertical
+        long m = discs & (discs >>> 1);
+        if ((m & (m >>> 2)) != 0)
+        {
+            return true;
+        }
+        // horizontal
+        m = discs & (discs >>> stride);
+        if ((m & (m >>> (2 * stride))) != 0)
+        {
+            return true;
+        }
+        // diagonal going down to the right
+        m = discs & (discs >>> (stride - 1));
+        if ((m & (m >>> (2 * (stride - 1)))) != 0)
+        {
+            return true;
+        }
+        // diagonal going up to the right
+        m = discs & (discs >>> (stride + 1));
+        return (m & (m >>> (2 * (stride + 1)))) != 0;
+    }
+
+    private long bit(int column, int row)
+    {
+        return 1L << (column * stride + height - 1 - row);
+    }
+
+    private void updateHeight(int column)
+    {
+        long col = ((red | yellow) >>> (column * stride)) & ((1L << height) - 1);
+        heights[column] = Long.SIZE - Long.numberOfLeadingZeros(col);
+    }
+}
@@ -20,6 +20,23 @@ public class Connect4Column
             slots[i] = new Connect4Slot();
         }
     }
+    /**
+     * Creates a new Connect4Column with a given height whose slots report their changes to
+     * the game they belong to.
+     *
+     *
+     * @param owner the game the column belongs to.
+     * @param column the index of the column in the game.
+     * @param height the height of the column.
+     */
+    Connect4Column(Connect4Game owner, int column, int height)
+    {
+        slots = new Connect4Slot[height];
+        for (int i = 0; i < height; i++)
+        {
+            slots[i] = new Connect4Slot(owner, column, i);
+        }
+    }
     /**
      * Creates a copy of the given Connect4Column.
      *
@@ -1,10 +1,10 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.util.Random;
 
 /**
  * The main driver of the Connect4Game, as well as the visualization of it.
+ * The game itself is played by a GameRunner; the frame adds the buttons and the drawing.
 
  */
 public class Connect4Frame extends JFrame
@@ -12,10 +12,9 @@ public class Connect4Frame extends JFrame
     Connect4Panel myPanel;  // the panel storing the visual of the game itself
     Connect4Game myGame;    // the game itself
     Agent redPlayer, yellowPlayer;   // the two players playing the game
-    boolean redPlayerturn, gameActive;  // booleans controlling whose turn it is and whether a game is ongoing
+    GameRunner runner;  // plays the game: turn order, validation and the end of the game
     JButton newGameButton, nextMoveButton, playToEndButton;   // the buttons controlling the game
     JLabel updateLabel; // the status label describing the events of the game
-    Random r;   // a random number generator to randomly decide who plays first
 
     /**
      * Creates a new Connect4Frame with a given game and pair of players.
@@ -32,8 +31,7 @@ public class Connect4Frame extends JFrame
         this.myGame = game;   // stores the game itself
         this.redPlayer = redPlayer;   // stores the red player
         this.yellowPlayer = yellowPlayer; //stores the yellow player
-        gameActive = false;   // initially sets that no game is active
-        r = new Random();   // creates the random number generator
+        runner = new GameRunner(game, redPlayer, yellowPlayer);   // creates the runner, initially with no game active
 
         myPanel = new Connect4Panel(game);  // creates the panel for displaying the game
 
@@ -66,7 +64,7 @@ public class Connect4Frame extends JFrame
                 }
             });
 
-        updateLabel = new JLabel(redPlayer.toString() + " vs. " + yellowPlayer.toString()); // creates the status label
+        updateLabel = new JLabel(runner.getStatus()); // creates the status label
         updateLabel.setAlignmentX(Component.CENTER_ALIGNMENT);  // centers the status label
 
         JPanel buttonPane = new JPanel();   // creates a pane for the buttons
@@ -108,44 +106,15 @@ public class Connect4Frame extends JFrame
      */
     private void nextMove()
     {
-        Connect4Game oldBoard = new Connect4Game(myGame);   // store the old board for validation
-        if(redPlayerturn) // if it's the red player's turn, run their move
+        runner.nextMove();  // play the move, validate it and check if the game is over
+        alert(runner.getStatus());
+        if (!runner.isGameActive()) // if the game is over or a move was invalid, stop the game
         {
-            redPlayer.move();
-            alert(yellowPlayer.toString() + " plays next...");
-        }
-        else // if it's the yellow player's turn, run their move
-        {
-            yellowPlayer.move();
-            alert(redPlayer.toString() + " plays next...");
-        }
-        String validateResult = oldBoard.validate(myGame); // check and make sure this is a valid next move for this board
-        if(validateResult.length() > 0) // if there was a validation error, show it and cancel the game
-        {
-            alert(validateResult);  // show the error
-            disableButtons();   // stop the game
-            gameActive = false;
-        }
-        redPlayerturn = !redPlayerturn;   // switch whose turn it is
-        char won = myGame.gameWon();    // check if the game has been won
-        if (won != 'N') // if the game has been won...
-        {
-            disableButtons();   // disable the buttons
-            gameActive = false;
-            if (myGame.gameWon() == 'R') // if red won, say so
-            {
-                alert(redPlayer.toString() + " wins!");
-            }
-            else if (myGame.gameWon() == 'Y') // if yellow won, say so
+            if (myGame.gameWon() != 'N')
             {
-                alert(yellowPlayer.toString() + " wins!");
+                myGame.highlightWinningLine();  // mark the winning tokens for the panel
             }
-        }
-        else if (myGame.boardFull()) // if the board is full...
-        {
-            disableButtons();   // disable the buttons
-            alert("The game ended in a draw!"); // announce the draw
-            gameActive = false;
+            disableButtons();
         }
         this.repaint();
     }
@@ -156,21 +125,9 @@ public class Connect4Frame extends JFrame
      */
     private void newGame()
     {
-        myGame.clearBoard();
+        runner.newGame();
         enableButtons();
-        gameActive = true;
-        redPlayerturn = r.nextBoolean();
-        if (redPlayerturn)
-        {
-            alert(redPlayer.toString() + " plays first!");
-            myGame.setRedPlayedFirst(true);
-        }
-        else
-        {
-            alert(yellowPlayer.toString() + " plays first!");
-            myGame.setRedPlayedFirst(false);
-        }
-        this.repaint();
+        alert(runner.getStatus());
     }
 
     /**
@@ -179,32 +136,11 @@ public class Connect4Frame extends JFrame
      */
     private void playToEnd()
     {
-        while (gameActive) // keep playing the next move until the game ends
+        while (runner.isGameActive()) // keep playing the next move until the game ends
         {
             nextMove();
         }
-        char won = myGame.gameWon();
-        if (won != 'N') // when it ends, announce how it ended: win or draw
-        {
-            disableButtons();
-            if (myGame.gameWon() == 'R')
-            {
-                alert(redPlayer.toString() + " wins!");
-            }
-            else if (myGame.gameWon() == 'Y')
-            {
-                alert(yellowPlayer.toString() + " wins!");
-            }
-        }
-        else if (myGame.boardFull())
-        {
-            disableButtons();
-            alert("The game ended in a draw!");
-        }
-        else // if it didn't end in a win or draw, leave the error message u
-        {
-            disableButtons();
-        }
+        disableButtons();   // the last status shows how it ended: win, draw or the error message
     }
 
     /**
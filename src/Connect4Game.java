@@ -4,11 +4,17 @@
  * Connect4Game is made of a certain number of Connect4Columns. Each column represents
  * a column from the current state of the game.
  *
+ * When the board is small enough, the game also keeps a Connect4Bitboard in step with its
+ * slots. Agents that search many positions can take a copy of it with getBitboard() and use
+ * its makeMove and undoMove methods instead of the columns and slots.
+ *
  */
 public class Connect4Game
 {
     private Connect4Column[] columns;
     private boolean redPlayedFirst;
+    private Connect4Bitboard bitboard;  // null when the board is too large for a bitboard
+    private int lastColumn = -1, lastRow = -1;  // the slot that received the most recent token
 
     /**
      * Construct a new Connect 4 game with the given size.
@@ -22,7 +28,11 @@ public class Connect4Game
         columns=new Connect4Column[numCols];
         for(int i = 0; i < numCols; i++)
         {
-            columns[i] = new Connect4Column(numRows);
+            columns[i] = new Connect4Column(this, i, numRows);
+        }
+        if (Connect4Bitboard.fits(numCols, numRows))
+        {
+            bitboard = new Connect4Bitboard(numCols, numRows);
         }
     }
     /**
@@ -33,10 +43,24 @@ public class Connect4Game
      */
     public Connect4Game(Connect4Game game)
     {
-        columns = new Connect4Column[game.getColumnCount()];
+        this(game.getColumnCount(), game.getRowCount());
         for (int i = 0; i < game.getColumnCount(); i++)
         {
-            columns[i] = new Connect4Column(game.getColumn(i));
+            for (int j = 0; j < game.getRowCount(); j++)
+            {
+                Connect4Slot slot = game.getColumn(i).getSlot(j);
+                if (slot.getIsFilled())
+                {
+                    if (slot.getIsRed())
+                    {
+                        columns[i].getSlot(j).addRed();
+                    }
+                    else
+                    {
+                        columns[i].getSlot(j).addYellow();
+                    }
+                }
+            }
         }
     }
 
@@ -133,6 +157,10 @@ public class Connect4Game
      */
     public boolean boardFull()
     {
+        if (bitboard != null)
+        {
+            return bitboard.isFull();
+        }
         char[][] board = getBoardMatrix();
         for (int i = 0; i < getColumnCount(); i++)
         {
@@ -147,12 +175,92 @@ public class Connect4Game
         return true;
     }
     /**
-     * Check if the game has been won.
+     * Check if the game has been won. This does not change the board; call
+     * highlightWinningLine() to mark the winning tokens for display.
      *
      *
      * @return 'R' if red won, 'Y' if yellow won, 'N' if the game has not been won.
      */
     public char gameWon()
+    {
+        if (bitboard != null)
+        {
+            return bitboard.winner();
+        }
+        return scanForWin(false);
+    }
+    /**
+     * Check if the most recently placed token completed four in a row. Only the lines through
+     * that token are looked at, so this is much cheaper than gameWon() when the game was not
+     * already won before the move.
+     *
+     *
+     * @return true if the last token placed won the game, false otherwise.
+     */
+    public boolean lastMoveWon()
+    {
+        if (lastColumn < 0)
+        {
+            return false;
+        }
+        Connect4Slot last = getColumn(lastColumn).getSlot(lastRow);
+        if (!last.getIsFilled())
+        {
+            return false;
+        }
+        boolean isRed = last.getIsRed();
+        if (bitboard != null)
+        {
+            return bitboard.hasWon(isRed);
+        }
+        return countLine(lastColumn, lastRow, 1, 0, isRed) >= 4
+                || countLine(lastColumn, lastRow, 0, 1, isRed) >= 4
+                || countLine(lastColumn, lastRow, 1, 1, isRed) >= 4
+                || countLine(lastColumn, lastRow, 1, -1, isRed) >= 4;
+    }
+    /**
+     * Highlight the tokens of a winning line, if there is one, so the panel can draw them.
+     *
+     */
+    public void highlightWinningLine()
+    {
+        scanForWin(true);
+    }
+    /**
+     * Count the tokens of one color in a row through a slot, in one direction and its opposite.
+     *
+     *
+     * @param column the column of the starting slot.
+     * @param row the row of the starting slot.
+     * @param dc the column step.
+     * @param dr the row step.
+     * @param isRed the color to count.
+     * @return the length of the line through the slot.
+     */
+    private int countLine(int column, int row, int dc, int dr, boolean isRed)
+    {
+        int count = 1;
+        for (int dir = -1; dir <= 1; dir += 2)
+        {
+            int i = column + dir * dc, j = row + dir * dr;
+            while (i >= 0 && i < getColumnCount() && j >= 0 && j < getRowCount()
+                    && getColumn(i).getSlot(j).getIsFilled() && getColumn(i).getSlot(j).getIsRed() == isRed)
+            {
+                count++;
+                i += dir * dc;
+                j += dir * dr;
+            }
+        }
+        return count;
+    }
+    /**
+     * Scan the whole board for four in a row.
+     *
+     *
+     * @param highlight true to highlight the winning tokens that are found.
+     * @return 'R' if red won, 'Y' if yellow won, 'N' if the game has not been won.
+     */
+    private char scanForWin(boolean highlight)
     {
         char[][] board = getBoardMatrix();
 
@@ -166,10 +274,13 @@ public class Connect4Game
                     {
                         if(board[j][i] == board[j + 1][i] && board[j][i] == board[j + 2][i] && board[j][i] == board[j + 3][i])
                         {
-                            highlightSlot(j, i);
-                            highlightSlot(j + 1, i);
-                            highlightSlot(j + 2, i);
-                            highlightSlot(j + 3, i);
+                            if (highlight)
+                            {
+                                highlightSlot(j, i);
+                                highlightSlot(j + 1, i);
+                                highlightSlot(j + 2, i);
+                                highlightSlot(j + 3, i);
+                            }
                             return board[j][i];
                         }
                     }
@@ -177,10 +288,13 @@ public class Connect4Game
                     {
                         if (board[j][i] == board[j][i + 1] && board[j][i] == board[j][i + 2] && board[j][i] == board[j][i + 3])
                         {
-                            highlightSlot(j, i);
-                            highlightSlot(j, i + 1);
-                            highlightSlot(j, i + 2);
-                            highlightSlot(j, i + 3);
+                            if (highlight)
+                            {
+                                highlightSlot(j, i);
+                                highlightSlot(j, i + 1);
+                                highlightSlot(j, i + 2);
+                                highlightSlot(j, i + 3);
+                            }
                             return board[j][i];
                         }
                     }
@@ -188,10 +302,13 @@ public class Connect4Game
                     {
                         if(board[j][i] == board[j + 1][i + 1] && board[j][i] == board[j + 2][i + 2] && board[j][i] == board[j + 3][i + 3])
                         {
-                            highlightSlot(j, i);
-                            highlightSlot(j + 1, i + 1);
-                            highlightSlot(j + 2, i + 2);
-                            highlightSlot(j + 3,i + 3);
+                            if (highlight)
+                            {
+                                highlightSlot(j, i);
+                                highlightSlot(j + 1, i + 1);
+                                highlightSlot(j + 2, i + 2);
+                                highlightSlot(j + 3,i + 3);
+                            }
                             return board[j][i];
                         }
                     }
@@ -199,10 +316,13 @@ public class Connect4Game
                     {
                         if (board[j][i] == board[j + 1][i - 1] && board[j][i] == board[j + 2][i - 2] && board[j][i] == board[j + 3][i - 3])
                         {
-                            highlightSlot(j, i);
-                            highlightSlot(j + 1, i - 1);
-                            highlightSlot(j + 2, i - 2);
-                            highlightSlot(j + 3, i - 3);
+                            if (highlight)
+                            {
+                                highlightSlot(j, i);
+                                highlightSlot(j + 1, i - 1);
+                                highlightSlot(j + 2, i - 2);
+                                highlightSlot(j + 3, i - 3);
+                            }
                             return board[j][i];
                         }
                     }
@@ -298,6 +418,126 @@ public class Connect4Game
         getColumn(column).getSlot(row).highlight();
     }
 
+    /**
+     * Check if the game keeps a bitboard of its slots.
+     *
+     *
+     * @return true if the board is small enough for a bitboard, false otherwise.
+     */
+    public boolean hasBitboard()
+    {
+        return bitboard != null;
+    }
+
+    /**
+     * Retrieve a bitboard copy of the board. Moves made on the copy do not change the game.
+     *
+     *
+     * @return a new Connect4Bitboard of the game board.
+     * @throws IllegalStateException if the board is too large for a bitboard.
+     */
+    public Connect4Bitboard getBitboard()
+    {
+        if (bitboard == null)
+        {
+            throw new IllegalStateException("A " + getColumnCount() + "x" + getRowCount() + " board does not fit in a bitboard.");
+        }
+        return new Connect4Bitboard(bitboard);
+    }
+
+    /**
+     * Drop a token in the lowest open slot of a column.
+     *
+     *
+     * @param column the column to play in.
+     * @param isRed true to play a red token, false to play a yellow token.
+     * @return true if the token was placed, false if the column is full or does not exist.
+     */
+    public boolean makeMove(int column, boolean isRed)
+    {
+        Connect4Column col = getColumn(column);
+        if (col == null)
+        {
+            return false;
+        }
+        for (int j = getRowCount() - 1; j >= 0; j--)
+        {
+            Connect4Slot slot = col.getSlot(j);
+            if (!slot.getIsFilled())
+            {
+                if (isRed)
+                {
+                    slot.addRed();
+                }
+                else
+                {
+                    slot.addYellow();
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Remove the highest token of a column.
+     *
+     *
+     * @param column the column to take the token from.
+     * @return true if a token was removed, false if the column is empty or does not exist.
+     */
+    public boolean undoMove(int column)
+    {
+        Connect4Column col = getColumn(column);
+        if (col == null)
+        {
+            return false;
+        }
+        for (int j = 0; j < getRowCount(); j++)
+        {
+            Connect4Slot slot = col.getSlot(j);
+            if (slot.getIsFilled())
+            {
+                slot.clear();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Keep the bitboard in step when a slot receives a token.
+     *
+     *
+     * @param column the column of the slot.
+     * @param row the row of the slot.
+     * @param isRed true if the token is red, false if it is yellow.
+     */
+    void slotFilled(int column, int row, boolean isRed)
+    {
+        lastColumn = column;
+        lastRow = row;
+        if (bitboard != null)
+        {
+            bitboard.set(column, row, isRed);
+        }
+    }
+
+    /**
+     * Keep the bitboard in step when a slot is emptied.
+     *
+     *
+     * @param column the column of the slot.
+     * @param row the row of the slot.
+     */
+    void slotCleared(int column, int row)
+    {
+        if (bitboard != null)
+        {
+            bitboard.clear(column, row);
+        }
+    }
+
     /**
      * Check whether red played first. This is used to confirm the players are alternating correctly.
      *
@@ -8,6 +8,9 @@ public class Connect4Slot
     private boolean isFilled;
     private boolean isRed;
     private boolean isHighlighted;
+    private Connect4Game owner;
+    private int column;
+    private int row;
 
     /**
      * Creates a new Connect4Slot, initially unfilled.
@@ -19,6 +22,22 @@ public class Connect4Slot
         this.isFilled = false;
         this.isRed = false;
     }
+    /**
+     * Creates a new Connect4Slot, initially unfilled, that tells the game it belongs to
+     * whenever a token is added or removed.
+     *
+     *
+     * @param owner the game the slot belongs to.
+     * @param column the column of the slot in the game.
+     * @param row the row of the slot in the game.
+     */
+    Connect4Slot(Connect4Game owner, int column, int row)
+    {
+        this();
+        this.owner = owner;
+        this.column = column;
+        this.row = row;
+    }
     /**
      * Copies the given slot.
      *
@@ -63,6 +82,10 @@ public class Connect4Slot
         {
             this.isFilled = true;
             this.isRed = true;
+            if (owner != null)
+            {
+                owner.slotFilled(column, row, true);
+            }
         }
     }
     /**
@@ -75,6 +98,10 @@ public class Connect4Slot
         {
             this.isFilled = true;
             this.isRed = false;
+            if (owner != null)
+            {
+                owner.slotFilled(column, row, false);
+            }
         }
     }
 
@@ -101,6 +128,10 @@ public class Connect4Slot
      */
     public void clear()
     {
+        if (owner != null && isFilled)
+        {
+            owner.slotCleared(column, row);
+        }
         this.isFilled = false;
         this.isRed = false;
         this.isHighlighted = false;
@@ -0,0 +1,295 @@
+/**
+ * Solves Connect 4 positions exactly with a negamax search, for the late part of a game where the whole remaining
+ * tree is small enough to search.
+ * <p>
+ * Scores are from the side to move. A win scores cells + 1 - n, where n is the number of tokens on the board before
+ * the winning token is dropped, so quicker wins score higher and the distance to the end can be read back from the
+ * score. A loss is the negative of the opponent's win and a draw scores 0.
+ * <p>
+ * The root is solved with a series of null-window searches that narrow the score down. Moves are generated from
+ * bitboard masks: an immediate win is taken, a single opponent threat is blocked, two threats or only moves that give
+ * the opponent a win lose at once, and moves that open up a slot the opponent wins on are never tried. The remaining
+ * moves are tried best-first, the table move and then the moves leaving the most winning slots. Results go into a
+ * transposition table keyed by the position of the side to move, so positions with the colors swapped share an
+ * entry. Entries do not depend on the root, so the table stays valid from one move to the next.
+ */
+public class EndgameSolver {
+
+    private static final int TIME_CHECK_INTERVAL = 1023; // The clock is read once every 1024 nodes.
+
+    private final Connect4Bitboard board; // The position being solved, changed and restored move by move.
+    private final TranspositionTable table;
+    private final int cells;
+    private final long bottom; // The bottom slot of every column, for building keys.
+    private final int[] columnOrder; // Middle columns first.
+    private final int[][] moves; // Moves of each ply, sorted best-first.
+    private final int[][] moveScores; // Ordering score of each move in moves.
+    private long deadline = Long.MAX_VALUE;
+    private boolean aborted;
+    private long nodes;
+
+    /**
+     * Constructs a solver that works on the given board.
+     *
+     * @param board Connect4Bitboard the board this solver owns
+     * @param table TranspositionTable kept for this solver only, its keys differ from the minimax search's
+     */
+    public EndgameSolver(Connect4Bitboard board, TranspositionTable table) {
+        this.board = board;
+        this.table = table;
+        int width = board.getColumnCount();
+        cells = width * board.getRowCount();
+        columnOrder = new int[width];
+        for (int i = 0; i < width; i++) {
+            columnOrder[i] = (width / 2 + ((i % 2 == 0) ? i / 2 : width - (i + 1) / 2)) % width;
+        }
+        long b = 0;
+        for (int i = 0; i < width; i++) {
+            b |= 1L << (i * board.getStride());
+        }
+        bottom = b;
+        moves = new int[cells + 1][width];
+        moveScores = new int[cells + 1][width];
+    }
+
+    /**
+     * @return the board this solver owns.
+     */
+    public Connect4Bitboard getBoard() {
+        return board;
+    }
+
+    /**
+     * Solves the board for the side to move. The board must not already be won.
+     *
+     * @param isRed    boolean true if red is to move
+     * @param deadline long a System.nanoTime() value, or Long.MAX_VALUE for no limit
+     * @return the exact score, meaningless if isAborted() is true afterwards
+     */
+    public int solve(boolean isRed, long deadline) {
+        this.deadline = deadline;
+        aborted = false;
+        nodes = 0;
+        int n = board.getMoveCount();
+        int min = -(cells + 1 - n);
+        int max = cells + 1 - n;
+        // Narrow the window with null-window searches, probing near 0 first since most scores are small.
+        while (min < max && !aborted) {
+            int med = min + (max - min) / 2;
+            if (med <= 0 && min / 2 < med) {
+                med = min / 2;
+            } else if (med >= 0 && max / 2 > med) {
+                med = max / 2;
+            }
+            int score = negamax(isRed, med, med + 1);
+            if (score <= med) {
+                max = score;
+            } else {
+                min = score;
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Finds a column that reaches the given score, normally the result of solve() for the same position. The table
+     * is warm after solving, so this costs little.
+     *
+     * @param isRed boolean true if red is to move
+     * @param score int
+     * @return the column, or -1 if the time ran out
+     */
+    public int bestMove(boolean isRed, int score) {
+        for (int col : columnOrder) {
+            if (board.canPlay(col) && board.isWinningMove(col, isRed)) {
+                return col;
+            }
+        }
+        for (int col : columnOrder) {
+            if (!board.canPlay(col)) {
+                continue;
+            }
+            board.makeMove(col, isRed);
+            // The move is good enough if the opponent cannot hold us below the score.
+            int reply = negamax(!isRed, -score, -score + 1);
+            board.undoMove(col);
+            if (aborted) {
+                return -1;
+            }
+            if (-reply >= score) {
+                return col;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if the deadline passed during the last solve or bestMove.
+     */
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * @return the number of nodes visited by the last solve.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return the transposition table.
+     */
+    public TranspositionTable getTable() {
+        return table;
+    }
+
+    /**
+     * Counts the plies from a position until the game ends, the winning or last token included.
+     *
+     * @param score     int a score from solve()
+     * @param moveCount int the number of tokens on the board that was solved
+     * @return int
+     */
+    public int distance(int score, int moveCount) {
+        return score == 0 ? cells - moveCount : cells + 2 - moveCount - Math.abs(score);
+    }
+
+    /**
+     * Describes a solved score as a proven result, such as "win in 7".
+     *
+     * @param score     int a score from solve()
+     * @param moveCount int the number of tokens on the board that was solved
+     * @return String
+     */
+    public String describe(int score, int moveCount) {
+        String result = score > 0 ? "win" : score < 0 ? "loss" : "draw";
+        return result + " in " + distance(score, moveCount);
+    }
+
+    /**
+     * Negamax with alpha-beta pruning. Returns the exact score if it lies inside the window, otherwise a bound on
+     * the same side of the window as the score.
+     *
+     * @param isRed boolean true if red is to move
+     * @param alpha int
+     * @param beta  int
+     * @return int
+     */
+    private int negamax(boolean isRed, int alpha, int beta) {
+        if ((++nodes & TIME_CHECK_INTERVAL) == 0 && System.nanoTime() > deadline) {
+            aborted = true;
+        }
+        if (aborted) {
+            return 0;
+        }
+        int n = board.getMoveCount();
+        if (n == cells) {
+            return 0;
+        }
+        long playable = board.getPlayableMask();
+        if ((board.getWinningSlots(isRed) & playable) != 0) {
+            return cells + 1 - n;
+        }
+        long threats = board.getWinningSlots(!isRed);
+        long forced = threats & playable;
+        // A slot right under an opponent's winning slot would let them win on top of it.
+        long safe = playable & ~(threats >>> 1);
+        if (forced != 0) {
+            if ((forced & (forced - 1)) != 0) { // Two threats at once cannot both be blocked.
+                return -(cells - n);
+            }
+            safe &= forced;
+        }
+        if (safe == 0) {
+            return -(cells - n);
+        }
+
+        // The opponent cannot win on the next move any more, and we cannot win before our next move.
+        int min = -Math.max(0, cells - n - 2);
+        if (alpha < min) {
+            alpha = min;
+            if (alpha >= beta) {
+                return alpha;
+            }
+        }
+        int max = cells - 1 - n;
+        if (beta > max) {
+            beta = max;
+            if (alpha >= beta) {
+                return beta;
+            }
+        }
+
+        long key = (board.getMask() + bottom) | (isRed ? board.getRed() : board.getYellow());
+        long entry = table.probe(key);
+        int ttMove = -1;
+        if (entry != 0) {
+            ttMove = TranspositionTable.move(entry);
+            int ttScore = TranspositionTable.score(entry);
+            int flag = TranspositionTable.flag(entry);
+            if (flag == TranspositionTable.EXACT) {
+                return ttScore;
+            } else if (flag == TranspositionTable.LOWER) {
+                alpha = Math.max(alpha, ttScore);
+            } else {
+                beta = Math.min(beta, ttScore);
+            }
+            if (alpha >= beta) {
+                return ttScore;
+            }
+        }
+
+        // Order the safe moves: the table move first, then by the winning slots they leave us, middle columns
+        // winning ties. A simple insertion sort is quickest for seven moves.
+        int ply = n;
+        int[] order = moves[ply];
+        int[] scores = moveScores[ply];
+        int count = 0;
+        int stride = board.getStride();
+        for (int col : columnOrder) {
+            long bit = safe & (((1L << stride) - 1) << (col * stride));
+            if (bit == 0) {
+                continue;
+            }
+            int score;
+            if (col == ttMove) {
+                score = Integer.MAX_VALUE;
+            } else {
+                board.makeMove(col, isRed);
+                score = Long.bitCount(board.getWinningSlots(isRed));
+                board.undoMove(col);
+            }
+            int i = count++;
+            for (; i > 0 && scores[i - 1] < score; i--) {
+                order[i] = order[i - 1];
+                scores[i] = scores[i - 1];
+            }
+            order[i] = col;
+            scores[i] = score;
+        }
+
+        int alphaOrig = alpha;
+        int bestCol = order[0];
+        for (int i = 0; i < count; i++) {
+            int col = order[i];
+            board.makeMove(col, isRed);
+            int score = -negamax(!isRed, -beta, -alpha);
+            board.undoMove(col);
+            if (aborted) {
+                return 0;
+            }
+            if (score >= beta) {
+                table.store(key, cells - n, TranspositionTable.LOWER, score, col);
+                return score;
+            }
+            if (score > alpha) {
+                alpha = score;
+                bestCol = col;
+            }
+        }
+        table.store(key, cells - n, alpha > alphaOrig ? TranspositionTable.EXACT : TranspositionTable.UPPER, alpha,
+                bestCol);
+        return alpha;
+    }
+}
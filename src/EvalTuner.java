@@ -0,0 +1,297 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tunes the evaluation weights Texel style: the weights are chosen so the evaluation predicts the results of real
+ * games as well as possible.
+ * <p>
+ * First MiniConnorMaxAgent plays itself with the default weights from random openings, and every quiet position of
+ * every game is labelled with the game's result: 1 if red won, 0 if yellow won, 0.5 for a draw. A position is quiet
+ * if neither player can win on the next move. The evaluation is a sum of weight times feature, so the features of
+ * each position are counted once up front. The prediction for a position is the logistic function 1 / (1 + e^(-K s))
+ * of its score s, and the error is the mean squared difference between predictions and labels. K is fitted to the
+ * default weights, then each weight in turn is moved up or down by a step and the move kept if the error drops, with
+ * the step shrinking once no move helps. The error is summed on several threads over fixed chunks of positions, so
+ * the result does not depend on the number of threads.
+ * <p>
+ * Every tenth game is kept out of the tuning to check that the new weights also predict games they were not fitted
+ * to. Each game's opening is drawn from its own generator seeded from the run's seed, and the agents search to a
+ * fixed depth, so a run with the same arguments always writes the same weights.
+ * <p>
+ * Usage: java EvalTuner [games] [depth] [seed] [threads] [file]
+ */
+public class EvalTuner {
+
+    private static final int OPENING_PLIES = 6; // Random moves at the start of each game.
+    private static final int SOLVER_EMPTY = 14; // The agents solve exactly once this few slots are left.
+    private static final int VALIDATION_EVERY = 10; // Every tenth game is kept for validation.
+    private static final int CHUNKS = 64; // Pieces the positions are cut into for summing the error.
+    private static final int[] STEPS = {1000, 300, 100, 30, 10}; // Coordinate descent step sizes.
+
+    private final int[][] features; // Feature counts of each position from red's point of view.
+    private final double[] results; // Result of each position's game for red.
+    private final boolean[] validation; // Set for positions of the games kept out of the tuning.
+    private final ExecutorService pool;
+
+    /**
+     * Constructs a tuner over labelled positions.
+     *
+     * @param features   int[][] feature counts of each position, from red's point of view
+     * @param results    double[] result of each position's game for red
+     * @param validation boolean[] set for the positions kept out of the tuning
+     * @param pool       ExecutorService sums the error
+     */
+    public EvalTuner(int[][] features, double[] results, boolean[] validation, ExecutorService pool) {
+        this.features = features;
+        this.results = results;
+        this.validation = validation;
+        this.pool = pool;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        Path file = Paths.get(args.length > 4 ? args[4] : EvaluationWeights.DEFAULT_FILE.toString());
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            long start = System.nanoTime();
+            EvalTuner tuner = selfPlay(games, depth, seed, pool);
+            System.out.printf("%d positions from %d games at depth %d in %d s%n", tuner.results.length, games, depth,
+                    (System.nanoTime() - start) / 1000000000L);
+
+            EvaluationWeights initial = EvaluationWeights.DEFAULT;
+            double k = tuner.fitK(initial.toArray());
+            System.out.printf("K = %.3e%n", k);
+            System.out.printf("Before: %s%n  training error %.6f, validation error %.6f%n", initial,
+                    tuner.error(initial.toArray(), k, false), tuner.error(initial.toArray(), k, true));
+            EvaluationWeights tuned = new EvaluationWeights(tuner.tune(initial.toArray(), k));
+            System.out.printf("After:  %s%n  training error %.6f, validation error %.6f%n", tuned,
+                    tuner.error(tuned.toArray(), k, false), tuner.error(tuned.toArray(), k, true));
+
+            tuned.save(file, String.format("EvalTuner games=%d depth=%d seed=%d", games, depth, seed));
+            System.out.println("Wrote " + file);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Plays games of MiniConnorMaxAgent against itself and labels their positions.
+     *
+     * @param games int
+     * @param depth int
+     * @param seed  long
+     * @param pool  ExecutorService plays the games
+     * @return a tuner over the quiet positions of every game
+     */
+    public static EvalTuner selfPlay(int games, int depth, long seed, ExecutorService pool) {
+        Evaluator evaluator = new Evaluator(LineTable.forSize(7, 6), EvaluationWeights.DEFAULT);
+        List<Callable<List<int[]>>> tasks = new ArrayList<>();
+        for (int i = 0; i < games; i++) {
+            long gameSeed = seed * 0x9E3779B97F4A7C15L + i;
+            tasks.add(() -> playGame(depth, gameSeed, evaluator));
+        }
+        List<int[]> positions = new ArrayList<>();
+        List<Boolean> held = new ArrayList<>();
+        try {
+            List<Future<List<int[]>>> futures = pool.invokeAll(tasks);
+            for (int i = 0; i < games; i++) {
+                for (int[] position : futures.get(i).get()) {
+                    positions.add(position);
+                    held.add(i % VALIDATION_EVERY == VALIDATION_EVERY - 1);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while playing", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A self-play game failed", e.getCause());
+        }
+
+        int[][] features = new int[positions.size()][];
+        double[] results = new double[positions.size()];
+        boolean[] validation = new boolean[positions.size()];
+        for (int i = 0; i < positions.size(); i++) {
+            int[] position = positions.get(i);
+            features[i] = Arrays.copyOf(position, EvaluationWeights.COUNT);
+            results[i] = position[EvaluationWeights.COUNT] / 2.0;
+            validation[i] = held.get(i);
+        }
+        return new EvalTuner(features, results, validation, pool);
+    }
+
+    /**
+     * Plays one game from a random opening, red first, and returns its quiet positions. Each position is given as
+     * its feature counts followed by the result for red in half points.
+     *
+     * @param depth     int
+     * @param seed      long
+     * @param evaluator Evaluator counts the features
+     * @return List of int[]
+     */
+    private static List<int[]> playGame(int depth, long seed, Evaluator evaluator) {
+        Random random = new Random(seed);
+        Connect4Game game = new Connect4Game(7, 6);
+        game.setRedPlayedFirst(true);
+        Connect4Bitboard board = new Connect4Bitboard(7, 6);
+        List<int[]> positions = new ArrayList<>();
+        boolean red = true;
+        for (int i = 0; i < OPENING_PLIES; i++) {
+            int col;
+            do {
+                col = random.nextInt(7);
+            } while (!board.canPlay(col));
+            game.makeMove(col, red);
+            board.makeMove(col, red);
+            red = !red;
+        }
+
+        MiniConnorMaxAgent[] agents = new MiniConnorMaxAgent[2];
+        for (int i = 0; i < 2; i++) {
+            agents[i] = new MiniConnorMaxAgent(game, i == 0, depth);
+            agents[i].setWeights(EvaluationWeights.DEFAULT);
+            agents[i].setSolverThreshold(SOLVER_EMPTY);
+        }
+        while (!board.hasWon(!red) && !board.isFull()) {
+            long playable = board.getPlayableMask();
+            boolean quiet = (board.getWinningSlots(true) & playable) == 0
+                    && (board.getWinningSlots(false) & playable) == 0;
+            if (quiet) {
+                int[] position = new int[EvaluationWeights.COUNT + 1];
+                evaluator.features(board, true, position);
+                positions.add(position);
+            }
+            long before = board.getMask();
+            agents[red ? 0 : 1].move();
+            Connect4Bitboard after = game.getBitboard();
+            int col = Long.numberOfTrailingZeros(after.getMask() ^ before) / after.getStride();
+            board.makeMove(col, red);
+            red = !red;
+        }
+        int result = board.hasWon(true) ? 2 : board.hasWon(false) ? 0 : 1;
+        for (int[] position : positions) {
+            position[EvaluationWeights.COUNT] = result;
+        }
+        return positions;
+    }
+
+    /**
+     * Finds the K for which the weights predict the training positions best, by a ternary search on log K.
+     *
+     * @param weights int[]
+     * @return double
+     */
+    public double fitK(int[] weights) {
+        double low = -8;
+        double high = -2;
+        for (int i = 0; i < 40; i++) {
+            double a = low + (high - low) / 3;
+            double b = high - (high - low) / 3;
+            if (error(weights, Math.pow(10, a), false) < error(weights, Math.pow(10, b), false)) {
+                high = b;
+            } else {
+                low = a;
+            }
+        }
+        return Math.pow(10, (low + high) / 2);
+    }
+
+    /**
+     * Moves the weights one at a time while that lowers the training error, with shrinking steps. Only weights
+     * EvaluationWeights accepts are tried.
+     *
+     * @param weights int[] the starting weights
+     * @param k       double
+     * @return the tuned weights
+     */
+    public int[] tune(int[] weights, double k) {
+        int[] best = weights.clone();
+        double bestError = error(best, k, false);
+        for (int step : STEPS) {
+            boolean improved = true;
+            while (improved) {
+                improved = false;
+                for (int i = 0; i < best.length; i++) {
+                    for (int direction : new int[]{1, -1}) {
+                        int[] trial = best.clone();
+                        trial[i] = Math.max(0, trial[i] + direction * step);
+                        if (trial[i] == best[i] || !EvaluationWeights.isValid(trial)) {
+                            continue; // Weights that could reach the win scores are never tried.
+                        }
+                        double trialError = error(trial, k, false);
+                        if (trialError < bestError) {
+                            best = trial;
+                            bestError = trialError;
+                            improved = true;
+                            break;
+                        }
+                    }
+                }
+            }
+            System.out.printf("  step %5d: error %.6f, %s%n", step, bestError, new EvaluationWeights(best));
+        }
+        return best;
+    }
+
+    /**
+     * Measures how well a set of weights predicts the results.
+     *
+     * @param weights    int[]
+     * @param k          double
+     * @param validation boolean true to measure on the validation positions, false on the training positions
+     * @return the mean squared error
+     */
+    public double error(int[] weights, double k, boolean validation) {
+        List<Callable<double[]>> tasks = new ArrayList<>();
+        int chunk = (results.length + CHUNKS - 1) / CHUNKS;
+        for (int start = 0; start < results.length; start += chunk) {
+            int from = start;
+            int to = Math.min(results.length, start + chunk);
+            tasks.add(() -> {
+                double sum = 0;
+                int count = 0;
+                for (int i = from; i < to; i++) {
+                    if (this.validation[i] != validation) {
+                        continue;
+                    }
+                    double score = 0;
+                    for (int w = 0; w < weights.length; w++) {
+                        score += weights[w] * (double) features[i][w];
+                    }
+                    double diff = results[i] - 1 / (1 + Math.exp(-k * score));
+                    sum += diff * diff;
+                    count++;
+                }
+                return new double[]{sum, count};
+            });
+        }
+        double sum = 0;
+        double count = 0;
+        try {
+            for (Future<double[]> future : pool.invokeAll(tasks)) { // Added up in order, so the sum is repeatable.
+                double[] part = future.get();
+                sum += part[0];
+                count += part[1];
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while measuring the error", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Measuring the error failed", e.getCause());
+        }
+        return count == 0 ? 0 : sum / count;
+    }
+}
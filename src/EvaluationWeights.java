@@ -0,0 +1,219 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * The weights of the evaluation terms, see Evaluator. Each weight is the score of one unit of a feature, and the
+ * score of a position is the sum of every weight times its feature.
+ * <p>
+ * Weights are kept in a small text file of name=value lines, written by EvalTuner. MiniConnorMaxAgent starts with
+ * the hand-picked defaults; Main reads eval.weights from the working directory once at start-up and hands the weights
+ * to its agents, so other drivers such as League and SprtMatch are never changed by a file left lying around.
+ * A file may leave out weights; those keep their default.
+ * <p>
+ * Weights cannot be negative, and on a 7x6 board no position may score more than MAX_SCORE, or the search would take
+ * the score for a forced win. The check assumes every line holds its better feature and one player has a good threat
+ * on every slot of its rows at once, which no real position reaches. Larger boards have more lines, so Evaluator cuts
+ * scores off at MAX_SCORE there.
+ */
+public class EvaluationWeights {
+
+    public static final int THREE = 0; // A vertical or diagonal line with three of a color and an empty slot.
+    public static final int TWO = 1; // A vertical or diagonal line with two of a color and none of the other.
+    public static final int THREE_HORIZONTAL = 2; // The same for horizontal lines.
+    public static final int TWO_HORIZONTAL = 3;
+    public static final int GOOD_THREAT = 4; // A threat on the row its owner will get to play.
+    public static final int ZUGZWANG = 5; // The player whose good threats decide the game.
+    public static final int COUNT = 6;
+
+    public static final int MAX_SCORE = MiniConnorMaxAgent.WIN_SCORE / 2; // Higher scores are read as wins.
+    public static final Path DEFAULT_FILE = Paths.get("eval.weights");
+    public static final EvaluationWeights DEFAULT =
+            new EvaluationWeights(new int[]{5000, 2500, 7500, 3750, 4000, 10000});
+
+    private static final String[] NAMES = {"three", "two", "threeHorizontal", "twoHorizontal", "goodThreat",
+            "zugzwang"};
+
+    private final int[] values;
+
+    /**
+     * Constructs a set of weights.
+     *
+     * @param values int[] one value per weight, indexed by the constants of this class
+     * @throws IllegalArgumentException if a weight is negative or a 7x6 position could score above MAX_SCORE
+     */
+    public EvaluationWeights(int[] values) {
+        if (values.length != COUNT) {
+            throw new IllegalArgumentException("Expected " + COUNT + " weights, got " + values.length);
+        }
+        for (int i = 0; i < COUNT; i++) {
+            if (values[i] < 0) {
+                throw new IllegalArgumentException("The " + NAMES[i] + " weight cannot be negative, got " + values[i]);
+            }
+        }
+        long max = maxScore(values, LineTable.forSize(7, 6));
+        if (max > MAX_SCORE) {
+            throw new IllegalArgumentException("These weights can score " + max + " on a 7x6 board, above the "
+                    + MAX_SCORE + " that counts as a win");
+        }
+        this.values = values.clone();
+    }
+
+    /**
+     * Checks weights against the same limits as the constructor, without throwing.
+     *
+     * @param values int[] one value per weight, indexed by the constants of this class
+     * @return true if the weights can be used
+     */
+    public static boolean isValid(int[] values) {
+        for (int value : values) {
+            if (value < 0) {
+                return false;
+            }
+        }
+        return values.length == COUNT && maxScore(values, LineTable.forSize(7, 6)) <= MAX_SCORE;
+    }
+
+    /**
+     * Returns the most a position could score on a board, counting every line with the larger weight of its
+     * direction and a good threat on every slot of one player's rows, with the zugzwang term on top.
+     *
+     * @param lines LineTable of the board
+     * @return long
+     */
+    public long maxScore(LineTable lines) {
+        return maxScore(values, lines);
+    }
+
+    /**
+     * @param values int[] non-negative weights
+     * @param lines  LineTable
+     * @return the most a position could score on the board of the line table.
+     */
+    private static long maxScore(int[] values, LineTable lines) {
+        long total = 0;
+        for (byte direction : lines.getDirections()) {
+            total += direction == LineTable.HORIZONTAL ? Math.max(values[THREE_HORIZONTAL], values[TWO_HORIZONTAL])
+                    : Math.max(values[THREE], values[TWO]);
+        }
+        int rows = lines.getRowCount();
+        if (rows % 2 == 0) { // Threats are only judged by their row when the row count is even, see Evaluator.
+            total += (long) values[GOOD_THREAT] * lines.getColumnCount() * (rows / 2) + values[ZUGZWANG];
+        }
+        return total;
+    }
+
+    /**
+     * @param index int one of the constants of this class
+     * @return the weight.
+     */
+    public int get(int index) {
+        return values[index];
+    }
+
+    /**
+     * @return a copy of every weight, indexed by the constants of this class.
+     */
+    public int[] toArray() {
+        return values.clone();
+    }
+
+    /**
+     * @param index int one of the constants of this class
+     * @return the name of the weight in a weights file.
+     */
+    public static String getName(int index) {
+        return NAMES[index];
+    }
+
+    /**
+     * Reads weights from a file.
+     *
+     * @param file Path
+     * @return EvaluationWeights
+     * @throws IOException if the file cannot be read, holds a value that is not a number, or holds weights the
+     *                     constructor rejects
+     */
+    public static EvaluationWeights load(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            properties.load(reader);
+        }
+        int[] values = DEFAULT.toArray();
+        for (int i = 0; i < COUNT; i++) {
+            String value = properties.getProperty(NAMES[i]);
+            if (value != null) {
+                try {
+                    values[i] = Integer.parseInt(value.trim());
+                } catch (NumberFormatException e) {
+                    throw new IOException("Bad value for " + NAMES[i] + " in " + file + ": " + value, e);
+                }
+            }
+        }
+        try {
+            return new EvaluationWeights(values);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Bad weights in " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads eval.weights from the working directory, or returns the defaults if there is no such file.
+     *
+     * @return EvaluationWeights
+     * @throws UncheckedIOException if the file exists but cannot be read
+     */
+    public static EvaluationWeights loadDefault() {
+        if (!Files.exists(DEFAULT_FILE)) {
+            return DEFAULT;
+        }
+        try {
+            return load(DEFAULT_FILE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the weights to a file, one name=value line each.
+     *
+     * @param file    Path
+     * @param comment String written at the top of the file, or null
+     * @throws IOException if the file cannot be written
+     */
+    public void save(Path file, String comment) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file)) {
+            if (comment != null) {
+                writer.write("# " + comment + System.lineSeparator());
+            }
+            for (int i = 0; i < COUNT; i++) {
+                writer.write(NAMES[i] + "=" + values[i] + System.lineSeparator());
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < COUNT; i++) {
+            text.append(i == 0 ? "" : ", ").append(NAMES[i]).append('=').append(values[i]);
+        }
+        return text.toString();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof EvaluationWeights && Arrays.equals(values, ((EvaluationWeights) other).values);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(values);
+    }
+}
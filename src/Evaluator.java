@@ -0,0 +1,283 @@
+import java.util.Arrays;
+
+/**
+ * The heuristic score of a position, kept up to date move by move.
+ * <p>
+ * The score is the sum of a value for every line of four on the board, which only depends on how many red and yellow
+ * tokens the line holds. The evaluator remembers those counts, so a move only changes the lines through the slot it
+ * fills, at most 13 on a 7x6 board, and reading the score at a leaf is free. The search calls play and undo next to
+ * every makeMove and undoMove of its board, and reset whenever the board is set up from scratch.
+ * <p>
+ * On top of the lines, threats (empty slots that would complete a four) are judged by their row. When the board fills
+ * up, the player who moved first is the one who gets to play into the odd rows counted from the bottom, and the
+ * second player into the even rows, because the second player can always answer in the same column. So an odd
+ * threat of the first player and an even threat of the second player will usually win in the end, while threats on
+ * the wrong row usually come to nothing. A threat above an opponent's threat in the same column is ignored, since
+ * the lower one decides the column. Threats are read from the bitboard with masks at each leaf. The rule rests on
+ * every column having an even number of rows, so on boards with an odd number of rows only the lines are scored.
+ * <p>
+ * Scores are from red's point of view. The value of a line with the colors swapped is the negative, so yellow's
+ * score is just the negative. Every term is a feature count times one of the EvaluationWeights, and features()
+ * gives the counts on their own for tuning the weights. On boards where the weights could add up to more than
+ * EvaluationWeights.MAX_SCORE, scores are cut off there so they are never mistaken for wins.
+ */
+public class Evaluator {
+
+    private static final int STATES = 25; // Red count times 5 plus yellow count.
+
+    private final long[] masks;
+    private final byte[] directions;
+    private final int goodThreat; // Weight of each threat on the row its owner will get to play.
+    private final int zugzwang; // Added once for the player whose good threats decide the game.
+    private final int[] cellStart;
+    private final int[] cellLines;
+    private final int[] lineValues; // Value of each line in each state, at line * STATES + state.
+    private final byte[] states; // Red count times 5 plus yellow count, for each line.
+    private final int rows;
+    private final long boardMask;
+    private final long oddRows; // The first, third, fifth... rows from the bottom.
+    private final boolean parity; // Set if threats are judged by their row, which needs an even number of rows.
+    private final boolean bounded; // Set if scores have to be cut off at EvaluationWeights.MAX_SCORE on this board.
+    private boolean redFirst; // The player who made the first move of the game.
+    private int score;
+
+    /**
+     * Constructs an evaluator for the board size of a line table, set up for an empty board.
+     *
+     * @param lines   LineTable
+     * @param weights EvaluationWeights
+     */
+    public Evaluator(LineTable lines, EvaluationWeights weights) {
+        masks = lines.getMasks();
+        directions = lines.getDirections();
+        cellStart = lines.getCellStart();
+        cellLines = lines.getCellLines();
+        goodThreat = weights.get(EvaluationWeights.GOOD_THREAT);
+        zugzwang = weights.get(EvaluationWeights.ZUGZWANG);
+        lineValues = new int[masks.length * STATES];
+        int[] feature = new int[EvaluationWeights.COUNT];
+        for (int line = 0; line < masks.length; line++) {
+            boolean horizontal = directions[line] == LineTable.HORIZONTAL;
+            for (int red = 0; red <= 4; red++) {
+                for (int yellow = 0; red + yellow <= 4; yellow++) {
+                    Arrays.fill(feature, 0);
+                    addGroup(red, yellow, horizontal, feature);
+                    int value = 0;
+                    for (int i = 0; i < feature.length; i++) {
+                        value += feature[i] * weights.get(i);
+                    }
+                    lineValues[line * STATES + red * 5 + yellow] = value;
+                }
+            }
+        }
+        states = new byte[masks.length];
+        rows = lines.getRowCount();
+        int stride = rows + 1;
+        long odd = 0;
+        long all = 0;
+        for (int col = 0; col < lines.getColumnCount(); col++) {
+            for (int row = 0; row < rows; row++) {
+                all |= 1L << (col * stride + row);
+                if (row % 2 == 0) {
+                    odd |= 1L << (col * stride + row);
+                }
+            }
+        }
+        boardMask = all;
+        oddRows = odd;
+        parity = rows % 2 == 0;
+        bounded = weights.maxScore(lines) > EvaluationWeights.MAX_SCORE;
+    }
+
+    /**
+     * Adds the feature counts of a group of four slots for the player holding countMe of them.
+     *
+     * @param countMe    int
+     * @param countOther int
+     * @param horizontal boolean
+     * @param features   int[] indexed by the EvaluationWeights constants
+     */
+    private static void addGroup(int countMe, int countOther, boolean horizontal, int[] features) {
+        int countEmpty = 4 - countMe - countOther;
+        int three = horizontal ? EvaluationWeights.THREE_HORIZONTAL : EvaluationWeights.THREE;
+        int two = horizontal ? EvaluationWeights.TWO_HORIZONTAL : EvaluationWeights.TWO;
+        if (countMe == 3 && countEmpty == 1) {
+            features[three]++;
+        } else if (countOther == 3 && countEmpty == 1) {
+            features[three]--;
+        } else if (countMe == 2 && countOther == 0) {
+            features[two]++;
+        } else if (countOther == 2 && countMe == 0) {
+            features[two]--;
+        }
+    }
+
+    /**
+     * Counts every line of a board from scratch.
+     *
+     * @param board    Connect4Bitboard
+     * @param redFirst boolean true if red made the first move of the game
+     */
+    public void reset(Connect4Bitboard board, boolean redFirst) {
+        this.redFirst = redFirst;
+        long red = board.getRed();
+        long yellow = board.getYellow();
+        score = 0;
+        for (int line = 0; line < masks.length; line++) {
+            int state = Long.bitCount(red & masks[line]) * 5 + Long.bitCount(yellow & masks[line]);
+            states[line] = (byte) state;
+            score += lineValues[line * STATES + state];
+        }
+    }
+
+    /**
+     * Adds a token. Call it before the board's makeMove, or with the bit the move fills.
+     *
+     * @param bit int the slot's bit index, column * stride + height
+     * @param red boolean
+     */
+    public void play(int bit, boolean red) {
+        int step = red ? 5 : 1;
+        for (int i = cellStart[bit]; i < cellStart[bit + 1]; i++) {
+            int line = cellLines[i];
+            int base = line * STATES;
+            int state = states[line];
+            score += lineValues[base + state + step] - lineValues[base + state];
+            states[line] = (byte) (state + step);
+        }
+    }
+
+    /**
+     * Takes a token back, the reverse of play.
+     *
+     * @param bit int the slot's bit index, column * stride + height
+     * @param red boolean
+     */
+    public void undo(int bit, boolean red) {
+        int step = red ? 5 : 1;
+        for (int i = cellStart[bit]; i < cellStart[bit + 1]; i++) {
+            int line = cellLines[i];
+            int base = line * STATES;
+            int state = states[line];
+            score += lineValues[base + state - step] - lineValues[base + state];
+            states[line] = (byte) (state - step);
+        }
+    }
+
+    /**
+     * Returns the score of a position from red's point of view: the running line score plus the threats.
+     *
+     * @param board Connect4Bitboard the board this evaluator has followed
+     * @return int
+     */
+    public int getScore(Connect4Bitboard board) {
+        return bound(score + threats(board, redFirst));
+    }
+
+    /**
+     * @param score int
+     * @return the score cut off at EvaluationWeights.MAX_SCORE either way, if this board needs it.
+     */
+    private int bound(int score) {
+        if (!bounded) {
+            return score;
+        }
+        return Math.max(-EvaluationWeights.MAX_SCORE, Math.min(EvaluationWeights.MAX_SCORE, score));
+    }
+
+    /**
+     * Scores the threats of both players by their row.
+     *
+     * @param board    Connect4Bitboard
+     * @param redFirst boolean true if red made the first move of the game
+     * @return the score from red's point of view
+     */
+    private int threats(Connect4Bitboard board, boolean redFirst) {
+        int counts = goodThreats(board, redFirst);
+        int value = goodThreat * (counts / 64 - counts % 64) + zugzwang * verdict(counts);
+        return redFirst ? value : -value;
+    }
+
+    /**
+     * Counts the good threats of both players, the ones on the row their owner will get to play.
+     *
+     * @param board    Connect4Bitboard
+     * @param redFirst boolean true if red made the first move of the game
+     * @return the first player's good threats times 64 plus the second player's
+     */
+    private int goodThreats(Connect4Bitboard board, boolean redFirst) {
+        if (!parity) {
+            return 0;
+        }
+        long redThreats = board.getWinningSlots(true);
+        long yellowThreats = board.getWinningSlots(false);
+        long first = redFirst ? redThreats & ~above(yellowThreats) : yellowThreats & ~above(redThreats);
+        long second = redFirst ? yellowThreats & ~above(redThreats) : redThreats & ~above(yellowThreats);
+        return Long.bitCount(first & oddRows) * 64 + Long.bitCount(second & boardMask & ~oddRows);
+    }
+
+    /**
+     * Decides which player's good threats should win the game. A good threat of the first player wins even against
+     * good threats of the second player in other columns.
+     *
+     * @param counts int from goodThreats
+     * @return 1 for the first player, -1 for the second, 0 if neither has a good threat
+     */
+    private static int verdict(int counts) {
+        return counts / 64 > 0 ? 1 : counts % 64 > 0 ? -1 : 0;
+    }
+
+    /**
+     * Finds every slot above a set of slots in the same column.
+     *
+     * @param slots long
+     * @return long
+     */
+    private long above(long slots) {
+        long result = (slots << 1) & boardMask;
+        for (int i = 1; i < rows; i++) {
+            result |= (result << 1) & boardMask;
+        }
+        return result;
+    }
+
+    /**
+     * Scores a board from scratch without touching the running counts, so it is safe to call from any thread.
+     *
+     * @param board    Connect4Bitboard
+     * @param redFirst boolean true if red made the first move of the game
+     * @return the score from red's point of view
+     */
+    public int evaluate(Connect4Bitboard board, boolean redFirst) {
+        long red = board.getRed();
+        long yellow = board.getYellow();
+        int total = 0;
+        for (int line = 0; line < masks.length; line++) {
+            total += lineValues[line * STATES + Long.bitCount(red & masks[line]) * 5
+                    + Long.bitCount(yellow & masks[line])];
+        }
+        return bound(total + threats(board, redFirst));
+    }
+
+    /**
+     * Counts the features of a board from red's point of view, so that its score is the sum of every weight times
+     * its feature. Safe to call from any thread.
+     *
+     * @param board    Connect4Bitboard
+     * @param redFirst boolean true if red made the first move of the game
+     * @param features int[] filled in, indexed by the EvaluationWeights constants
+     */
+    public void features(Connect4Bitboard board, boolean redFirst, int[] features) {
+        Arrays.fill(features, 0);
+        long red = board.getRed();
+        long yellow = board.getYellow();
+        for (int line = 0; line < masks.length; line++) {
+            addGroup(Long.bitCount(red & masks[line]), Long.bitCount(yellow & masks[line]),
+                    directions[line] == LineTable.HORIZONTAL, features);
+        }
+        int counts = goodThreats(board, redFirst);
+        int sign = redFirst ? 1 : -1;
+        features[EvaluationWeights.GOOD_THREAT] = sign * (counts / 64 - counts % 64);
+        features[EvaluationWeights.ZUGZWANG] = sign * verdict(counts);
+    }
+}
@@ -0,0 +1,228 @@
+import java.util.Random;
+
+/**
+ * Plays games between two agents without any window.
+ *
+ * GameRunner follows the same rules as Connect4Frame: a random player moves first, the players
+ * alternate, and every move is checked with validate() before the game goes on. It keeps a status
+ * message with the same text the frame displays, so Connect4Frame drives its games through a
+ * GameRunner and only adds the buttons and the drawing.
+ *
+ */
+public class GameRunner
+{
+    private Connect4Game myGame;    // the game itself
+    private Agent redPlayer, yellowPlayer;   // the two players playing the game
+    private boolean redPlayerTurn, gameActive;  // booleans controlling whose turn it is and whether a game is ongoing
+    private Random r;   // a random number generator to randomly decide who plays first
+    private String status;  // a description of the last event of the game
+    private String validationError; // the reason the last game was stopped, or an empty string
+
+    /**
+     * Creates a new GameRunner with a given game and pair of players.
+     *
+     *
+     * @param game the game itself.
+     * @param redPlayer the agent playing as the red tokens.
+     * @param yellowPlayer the agent playing as the yellow tokens.
+     */
+    public GameRunner(Connect4Game game, Agent redPlayer, Agent yellowPlayer)
+    {
+        this(game, redPlayer, yellowPlayer, new Random());
+    }
+
+    /**
+     * Creates a new GameRunner with a given game, pair of players and random number generator.
+     * Passing a seeded generator makes the choice of first player repeatable.
+     *
+     *
+     * @param game the game itself.
+     * @param redPlayer the agent playing as the red tokens.
+     * @param yellowPlayer the agent playing as the yellow tokens.
+     * @param r the random number generator that decides who plays first.
+     */
+    public GameRunner(Connect4Game game, Agent redPlayer, Agent yellowPlayer, Random r)
+    {
+        this.myGame = game;
+        this.redPlayer = redPlayer;
+        this.yellowPlayer = yellowPlayer;
+        this.r = r;
+        this.gameActive = false;
+        this.status = redPlayer.toString() + " vs. " + yellowPlayer.toString();
+        this.validationError = "";
+    }
+
+    /**
+     * Clear the board and start a new game with a random first player.
+     *
+     */
+    public void newGame()
+    {
+        newGame(r.nextBoolean());
+    }
+
+    /**
+     * Clear the board and start a new game.
+     *
+     *
+     * @param redFirst true if red plays first, false if yellow plays first.
+     */
+    public void newGame(boolean redFirst)
+    {
+        myGame.clearBoard();
+        gameActive = true;
+        validationError = "";
+        redPlayerTurn = redFirst;
+        myGame.setRedPlayedFirst(redFirst);
+        if (redFirst)
+        {
+            status = redPlayer.toString() + " plays first!";
+        }
+        else
+        {
+            status = yellowPlayer.toString() + " plays first!";
+        }
+    }
+
+    /**
+     * Clear the board and start a new game from an opening. The opening moves are played for the
+     * players, alternating from the first player, and the agents take over from there. Playing the
+     * same opening twice with the colors swapped gives a fair pair of games.
+     *
+     *
+     * @param redFirst true if red plays first, false if yellow plays first.
+     * @param opening the columns of the opening moves, in order.
+     */
+    public void newGame(boolean redFirst, int[] opening)
+    {
+        newGame(redFirst);
+        for (int column : opening)
+        {
+            myGame.makeMove(column, redPlayerTurn);
+            redPlayerTurn = !redPlayerTurn;
+        }
+        if (redPlayerTurn)
+        {
+            status = redPlayer.toString() + " plays next...";
+        }
+        else
+        {
+            status = yellowPlayer.toString() + " plays next...";
+        }
+    }
+
+    /**
+     * Runs the next move of the game.
+     *
+     */
+    public void nextMove()
+    {
+        Connect4Game oldBoard = new Connect4Game(myGame);   // store the old board for validation
+        if (redPlayerTurn) // if it's the red player's turn, run their move
+        {
+            redPlayer.move();
+            status = yellowPlayer.toString() + " plays next...";
+        }
+        else // if it's the yellow player's turn, run their move
+        {
+            yellowPlayer.move();
+            status = redPlayer.toString() + " plays next...";
+        }
+        String validateResult = oldBoard.validate(myGame); // check and make sure this is a valid next move for this board
+        if (validateResult.length() > 0) // if there was a validation error, remember it and cancel the game
+        {
+            status = validateResult;
+            validationError = validateResult;
+            gameActive = false;
+        }
+        redPlayerTurn = !redPlayerTurn;   // switch whose turn it is
+        char won = myGame.gameWon();    // check if the game has been won
+        if (won != 'N') // if the game has been won, say who won
+        {
+            gameActive = false;
+            if (won == 'R')
+            {
+                status = redPlayer.toString() + " wins!";
+            }
+            else
+            {
+                status = yellowPlayer.toString() + " wins!";
+            }
+        }
+        else if (myGame.boardFull()) // if the board is full, announce the draw
+        {
+            status = "The game ended in a draw!";
+            gameActive = false;
+        }
+    }
+
+    /**
+     * Runs the game until it's over.
+     *
+     *
+     * @return 'R' if red won, 'Y' if yellow won, 'N' for a draw or a game stopped by an invalid move.
+     */
+    public char playToEnd()
+    {
+        while (gameActive) // keep playing the next move until the game ends
+        {
+            nextMove();
+        }
+        return myGame.gameWon();
+    }
+
+    /**
+     * Check whether a game is in progress.
+     *
+     *
+     * @return true if the game is still being played, false otherwise.
+     */
+    public boolean isGameActive()
+    {
+        return gameActive;
+    }
+
+    /**
+     * Check whose turn it is.
+     *
+     *
+     * @return true if red moves next, false if yellow moves next.
+     */
+    public boolean isRedPlayerTurn()
+    {
+        return redPlayerTurn;
+    }
+
+    /**
+     * Get a description of the last event of the game, such as who plays next or who won.
+     *
+     *
+     * @return the status message.
+     */
+    public String getStatus()
+    {
+        return status;
+    }
+
+    /**
+     * Get the reason the last game was stopped by an invalid move.
+     *
+     *
+     * @return the validation message, or an empty string if every move was valid.
+     */
+    public String getValidationError()
+    {
+        return validationError;
+    }
+
+    /**
+     * Get the game being played.
+     *
+     *
+     * @return the game.
+     */
+    public Connect4Game getGame()
+    {
+        return myGame;
+    }
+}
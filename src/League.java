@@ -0,0 +1,239 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A round-robin league between any number of agents.
+ * Every pair of entrants plays the same number of games, half with each color, and all the games of the league share
+ * one thread pool. The results are turned into Elo ratings by maximum likelihood, with 95% confidence intervals, and
+ * can be written out as a crosstable. A game stopped by an invalid move is lost by the player who made it.
+ * <p>
+ * Usage: java League [games per pair] [threads] [crosstable file]
+ */
+public class League {
+
+    private static final double ELO_PER_NATURAL_LOG = 400 / Math.log(10);
+    private static final double PRIOR_DRAWS = 1; // Virtual draws between every pair, so a perfect score stays finite.
+
+    private final List<String> names = new ArrayList<>();
+    private final List<AgentFactory> factories = new ArrayList<>();
+    private double[][] score; // score[i][j]: points of entrant i against entrant j, a draw counting half.
+    private int[][] games; // games[i][j]: number of games between entrants i and j.
+    private double[] elo;
+    private double[] error; // Half width of the 95% confidence interval of each rating.
+
+    /**
+     * Adds an agent to the league.
+     *
+     * @param name    String shown in the crosstable
+     * @param factory AgentFactory
+     */
+    public void addEntrant(String name, AgentFactory factory) {
+        names.add(name);
+        factories.add(factory);
+    }
+
+    /**
+     * Plays every pairing and computes the ratings.
+     *
+     * @param gamesPerPair int rounded up to an even number so both colors are played equally
+     * @param threads      int
+     * @param seed         long decides who plays first in each game
+     */
+    public void run(int gamesPerPair, int threads, long seed) {
+        int n = names.size();
+        if (n < 2) {
+            throw new IllegalStateException("A league needs at least two entrants, got " + n);
+        }
+        int perColor = (gamesPerPair + 1) / 2;
+        score = new double[n][n];
+        games = new int[n][n];
+        Random seeds = new Random(seed);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<int[]> pairings = new ArrayList<>();
+            List<Future<Tournament.Results>> futures = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    if (i == j) {
+                        continue;
+                    }
+                    Tournament match = new Tournament(factories.get(i), factories.get(j));
+                    for (int k = 0; k < perColor; k++) {
+                        long gameSeed = seeds.nextLong();
+                        pairings.add(new int[]{i, j});
+                        futures.add(pool.submit(() -> match.playOne(gameSeed)));
+                    }
+                }
+            }
+            for (int k = 0; k < futures.size(); k++) {
+                int red = pairings.get(k)[0];
+                int yellow = pairings.get(k)[1];
+                Tournament.Results result = futures.get(k).get();
+                double redPoints = result.getRedScore(); // Charges an invalid move to whoever made it.
+                score[red][yellow] += redPoints;
+                score[yellow][red] += 1 - redPoints;
+                games[red][yellow]++;
+                games[yellow][red]++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("The league was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A game failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        computeRatings();
+    }
+
+    /**
+     * Fits a Bradley-Terry model to the results with the minorization-maximization iteration, then converts the
+     * strengths to Elo with an average of 0. The error of each rating comes from the curvature of the likelihood.
+     */
+    private void computeRatings() {
+        int n = names.size();
+        double[] gamma = new double[n];
+        Arrays.fill(gamma, 1);
+        for (int iteration = 0; iteration < 10000; iteration++) {
+            double change = 0;
+            for (int i = 0; i < n; i++) {
+                double points = 0;
+                double weight = 0;
+                for (int j = 0; j < n; j++) {
+                    if (i != j) {
+                        points += score[i][j] + PRIOR_DRAWS / 2;
+                        weight += (games[i][j] + PRIOR_DRAWS) / (gamma[i] + gamma[j]);
+                    }
+                }
+                double next = points / weight;
+                change = Math.max(change, Math.abs(Math.log(next / gamma[i])));
+                gamma[i] = next;
+            }
+            if (change < 1e-9) {
+                break;
+            }
+        }
+        elo = new double[n];
+        error = new double[n];
+        double mean = 0;
+        for (int i = 0; i < n; i++) {
+            elo[i] = ELO_PER_NATURAL_LOG * Math.log(gamma[i]);
+            mean += elo[i] / n;
+        }
+        for (int i = 0; i < n; i++) {
+            elo[i] -= mean;
+            double information = 0;
+            for (int j = 0; j < n; j++) {
+                if (i != j) {
+                    double p = gamma[i] / (gamma[i] + gamma[j]);
+                    information += (games[i][j] + PRIOR_DRAWS) * p * (1 - p);
+                }
+            }
+            error[i] = 1.96 * ELO_PER_NATURAL_LOG / Math.sqrt(information);
+        }
+    }
+
+    /**
+     * @return the Elo rating of each entrant, in the order they were added.
+     */
+    public double[] getRatings() {
+        return elo.clone();
+    }
+
+    /**
+     * @return the half width of the 95% confidence interval of each rating.
+     */
+    public double[] getErrors() {
+        return error.clone();
+    }
+
+    /**
+     * Builds the crosstable: entrants sorted by rating, their Elo and interval, total score, and the points scored
+     * against each opponent.
+     *
+     * @return String
+     */
+    public String crosstable() {
+        int n = names.size();
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(elo[b], elo[a]));
+        int width = 4;
+        for (String name : names) {
+            width = Math.max(width, name.length());
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%3s %-" + width + "s %6s %5s %11s", "#", "Name", "Elo", "+/-", "Score"));
+        for (int k = 0; k < n; k++) {
+            sb.append(String.format(" %9d", k + 1));
+        }
+        sb.append(System.lineSeparator());
+        for (int r = 0; r < n; r++) {
+            int i = order[r];
+            double points = 0;
+            int played = 0;
+            for (int j = 0; j < n; j++) {
+                points += score[i][j];
+                played += games[i][j];
+            }
+            sb.append(String.format("%3d %-" + width + "s %6.0f %5.0f %5.1f/%-5d", r + 1, names.get(i), elo[i],
+                    error[i], points, played));
+            for (int c = 0; c < n; c++) {
+                int j = order[c];
+                sb.append(i == j ? String.format(" %9s", "-")
+                        : String.format(" %9s", String.format("%.1f/%d", score[i][j], games[i][j])));
+            }
+            sb.append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes the crosstable to a file.
+     *
+     * @param file Path
+     * @throws IOException if the file cannot be written
+     */
+    public void writeCrosstable(Path file) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            out.print(crosstable());
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int gamesPerPair = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        League league = new League();
+        for (int depth : new int[]{4, 6, 8}) {
+            league.addEntrant("MiniConnorMax d" + depth, (g, iAmRed) -> new MiniConnorMaxAgent(g, iAmRed, depth));
+        }
+        league.addEntrant("Monte Carlo", MonteCarloAgent::new);
+        league.addEntrant("Teacher", TeacherAgent::new);
+        league.addEntrant("Teacher 2", TeacherAgent2::new);
+        league.addEntrant("Brilliant", BrilliantAgent::new);
+        league.addEntrant("Advanced", AdvancedAgent::new);
+        league.addEntrant("Intermediate", IntermediateAgent::new);
+        league.addEntrant("Beginner", BeginnerAgent::new);
+        league.addEntrant("Random", RandomAgent::new);
+
+        league.run(gamesPerPair, threads, System.nanoTime());
+        System.out.print(league.crosstable());
+        if (args.length > 2) {
+            league.writeCrosstable(Paths.get(args[2]));
+        }
+    }
+}
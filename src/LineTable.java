@@ -0,0 +1,150 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Every line of four slots on a board of one size, as bitboard masks in the Connect4Bitboard layout.
+ * <p>
+ * Lines are listed flat: masks[i] holds the four slots of line i and directions[i] says which way it runs. For each
+ * slot the lines through it can be read as well, from cellLines[cellStart[bit]] up to cellLines[cellStart[bit + 1]],
+ * where bit is the slot's bit index. Tables never change once built and are shared by every agent playing on a board
+ * of the same size, so they are built once per size and fetched with forSize.
+ * <p>
+ * Only boards that fit in a Connect4Bitboard have a table. On larger boards MiniConnorMaxAgent scores the same lines
+ * by walking the board matrix instead, without the threat terms of Evaluator.
+ */
+public class LineTable {
+
+    public static final int HORIZONTAL = 0;
+    public static final int VERTICAL = 1;
+    public static final int DIAGONAL = 2; // Either way up.
+
+    private static final Map<Long, LineTable> TABLES = new ConcurrentHashMap<>();
+
+    private final int columns;
+    private final int rows;
+    private final long[] masks;
+    private final byte[] directions;
+    private final int[] cellStart;
+    private final int[] cellLines;
+
+    /**
+     * Builds the table for a board size.
+     *
+     * @param columns int
+     * @param rows    int
+     */
+    private LineTable(int columns, int rows) {
+        this.columns = columns;
+        this.rows = rows;
+        int stride = rows + 1;
+        // Column and row steps of each direction, the row counted from the bottom.
+        int[][] steps = {{1, 0}, {0, 1}, {1, 1}, {1, -1}};
+        long[] lineMasks = new long[4 * columns * rows];
+        byte[] lineDirections = new byte[lineMasks.length];
+        int count = 0;
+        for (int[] step : steps) {
+            for (int col = 0; col < columns; col++) {
+                for (int row = 0; row < rows; row++) {
+                    int endCol = col + 3 * step[0];
+                    int endRow = row + 3 * step[1];
+                    if (endCol >= columns || endRow < 0 || endRow >= rows) {
+                        continue;
+                    }
+                    long mask = 0;
+                    for (int i = 0; i < 4; i++) {
+                        mask |= 1L << ((col + i * step[0]) * stride + row + i * step[1]);
+                    }
+                    lineMasks[count] = mask;
+                    lineDirections[count] = (byte) (step[0] == 0 ? VERTICAL : step[1] == 0 ? HORIZONTAL : DIAGONAL);
+                    count++;
+                }
+            }
+        }
+        masks = Arrays.copyOf(lineMasks, count);
+        directions = Arrays.copyOf(lineDirections, count);
+
+        int bits = columns * stride;
+        cellStart = new int[bits + 1];
+        for (long mask : masks) {
+            for (long m = mask; m != 0; m &= m - 1) {
+                cellStart[Long.numberOfTrailingZeros(m) + 1]++;
+            }
+        }
+        for (int bit = 0; bit < bits; bit++) {
+            cellStart[bit + 1] += cellStart[bit];
+        }
+        cellLines = new int[cellStart[bits]];
+        int[] fill = Arrays.copyOf(cellStart, bits);
+        for (int i = 0; i < masks.length; i++) {
+            for (long m = masks[i]; m != 0; m &= m - 1) {
+                cellLines[fill[Long.numberOfTrailingZeros(m)]++] = i;
+            }
+        }
+    }
+
+    /**
+     * Returns the table for a board size, building it the first time the size is asked for.
+     *
+     * @param columns int
+     * @param rows    int
+     * @return LineTable
+     * @throws IllegalArgumentException if the board does not fit in a Connect4Bitboard
+     */
+    public static LineTable forSize(int columns, int rows) {
+        if (!Connect4Bitboard.fits(columns, rows)) {
+            throw new IllegalArgumentException("A " + columns + "x" + rows + " board does not fit in a bitboard.");
+        }
+        return TABLES.computeIfAbsent((long) columns << 32 | rows, k -> new LineTable(columns, rows));
+    }
+
+    /**
+     * @return the number of columns of the board.
+     */
+    public int getColumnCount() {
+        return columns;
+    }
+
+    /**
+     * @return the number of rows of the board.
+     */
+    public int getRowCount() {
+        return rows;
+    }
+
+    /**
+     * @return the number of lines.
+     */
+    public int size() {
+        return masks.length;
+    }
+
+    /**
+     * @return the mask of every line. Shared, so it must not be changed.
+     */
+    public long[] getMasks() {
+        return masks;
+    }
+
+    /**
+     * @return the direction of every line, HORIZONTAL, VERTICAL or DIAGONAL. Shared, so it must not be changed.
+     */
+    public byte[] getDirections() {
+        return directions;
+    }
+
+    /**
+     * @return where the lines of each slot start in getCellLines(), indexed by bit, with one extra entry at the
+     * end. Shared, so it must not be changed.
+     */
+    public int[] getCellStart() {
+        return cellStart;
+    }
+
+    /**
+     * @return the lines through each slot, one slot after another. Shared, so it must not be changed.
+     */
+    public int[] getCellLines() {
+        return cellLines;
+    }
+}
@@ -1,18 +1,51 @@
+import java.awt.GraphicsEnvironment;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
 /**
  * The main driver of the program. This file will create the game, create the two agents,
  * and create the window for the game. After that, Connect4Frame runs everything.
+ * Without a display, or when run with --headless, the games are played by a Tournament instead,
+ * on as many threads as there are processors.
+ * If an opening book built by OpeningBook is found in opening.book, the minimax agent plays its first moves from it,
+ * and if evaluation weights written by EvalTuner are found in eval.weights, it evaluates with them.
  */
 
 public class Main {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        Path bookFile = Paths.get("opening.book");
+        OpeningBook book = Files.exists(bookFile) ? new OpeningBook(bookFile) : null;
+        EvaluationWeights weights = EvaluationWeights.loadDefault(); // read once, not for every game
+        System.out.println((Files.exists(EvaluationWeights.DEFAULT_FILE) ? "Evaluation weights from "
+                + EvaluationWeights.DEFAULT_FILE : "Built-in evaluation weights") + ": " + weights);
+        AgentFactory red = (g, iAmRed) -> { // the red player, any subclass of Agent
+            MiniConnorMaxAgent agent = new MiniConnorMaxAgent(g, iAmRed, 7);
+            agent.setOpeningBook(book);
+            if (weights != EvaluationWeights.DEFAULT) {
+                agent.setWeights(weights);
+            }
+            return agent;
+        };
+        AgentFactory yellow = TeacherAgent::new; // the yellow player, any subclass of Agent
+        int times = 25;
+
+        if (GraphicsEnvironment.isHeadless() || Arrays.asList(args).contains("--headless")) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            Tournament.Results results = new Tournament(red, yellow).play(times, threads, System.nanoTime());
+            System.out.println(results);
+            return;
+        }
+
         Connect4Game game = new Connect4Game(7, 6); // create the game; these sizes can be altered for larger or smaller games
-        Agent redPlayer = new MiniConnorMaxAgent(game, true, 7); // create the red player, any subclass of Agent
-        Agent yellowPlayer = new TeacherAgent(game, false);// create the yellow player, any subclass of Agent
+        Agent redPlayer = red.create(game, true); // create the red player
+        Agent yellowPlayer = yellow.create(game, false);// create the yellow player
 
         Connect4Frame mainframe = new Connect4Frame(game, redPlayer, yellowPlayer); // create the game window
 
         int me = 0, them = 0, draw = 0;
-        int times = 25;
 
         for (int i = 0; i < times; i++) {
             mainframe.newGameButtonPressed();
@@ -1,12 +1,61 @@
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Objects;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MiniConnorMaxAgent extends Agent {
 
     private final int DEPTH; // How many steps/turns the Agent will look into the future.
     private final int[] COLUMN_PRIORITY; // Prioritizes the middle columns so that there is more pruning.
-    private int lastCol; // Stores the last visited column
+    private EvaluationWeights weights = EvaluationWeights.DEFAULT; // Replaced with setWeights, e.g. by Main.
+    private Evaluator evaluation; // Scores whole boards; only its thread-safe evaluate method is used. Null on slots.
+    static final int WIN_SCORE = 1000000; // Scores beyond this (plus the depth) are forced wins or losses.
+    private static final int DEFAULT_TABLE_MB = 16; // Memory used by the transposition table unless told otherwise.
+    private static final int DEFAULT_SOLVER_EMPTY = 24; // Solve exactly once this few slots are left.
+    private static final int PONDER_MOVES = 4; // A timed agent ponders for at most this many of its move budgets.
+    private static final int[][] LINE_STEPS = {{1, 0}, {0, 1}, {1, 1}, {1, -1}}; // Column and row steps of a line.
+
+    private final MinimaxSearch search; // Searches on the agent's own thread, or null if the board has no bitboard.
+    private MinimaxSearch[] workers; // One search per thread when searching in parallel, built on first use.
+    private ForkJoinPool pool; // Runs the workers, or null when searching on one thread.
+    private int parallelism = 1; // Number of threads used to search.
+    private boolean lazySmp; // Helpers share one table and search the whole tree instead of splitting the root.
+    private List<Future<?>> helpers; // Lazy SMP helpers running during the current move.
+    private int tableMegabytes = DEFAULT_TABLE_MB; // Memory budget for the transposition tables.
+    private boolean verbose; // Prints search statistics after every move.
+    private boolean reuseTables = true; // Keeps the transposition tables from one move to the next.
+    private int tableFirstMover = -1; // 1 if the table was filled in games the agent started, 0 if not, -1 if empty.
+    private boolean pondering; // Searches the opponent's replies in the background after every move.
+    private Thread ponderThread; // Running while the opponent thinks, or null.
+    private MinimaxSearch ponderSearch; // The search run by ponderThread, with its own board.
+    private volatile boolean ponderStop; // Set to end pondering.
+    private Connect4Bitboard ponderPosition; // The position the opponent was to move in while pondering.
+    private int[] ponderMoves; // Our best column after each reply of the opponent, or -1.
+    private int[] ponderDepths; // Depth searched after each reply.
+    private int[] ponderScores; // Score after each reply.
+    private long ponderNodes; // Nodes visited while pondering.
+    private boolean ponderHit; // Set if the last move was already found while pondering.
+    private boolean dynamicOrdering = true; // Orders moves with killers and history as well as the table move.
+    private boolean threatShortcuts = true; // Takes immediate wins and forced blocks without searching.
+    private MinimaxSearch.Algorithm algorithm = MinimaxSearch.Algorithm.MINIMAX; // The search used by every thread.
+    private int solverThreshold = DEFAULT_SOLVER_EMPTY; // Empty slots at or below which the position is solved.
+    private EndgameSolver solver; // Built on first use; its table is kept from move to move.
+    private String solvedResult; // The proven result of the last move, or null if it was searched.
+    private OpeningBook book; // Answers the first moves without searching, or null.
+    private boolean bookMove; // Set if the last move came from the book.
+    private final long MOVE_MILLIS; // Time budget for each move, or 0 to always search to DEPTH.
+    private boolean aborted; // Set if the last move ran out of time.
+    private int completedDepth; // Deepest iteration that finished during the last move.
+    private int iterationScore; // Score of the last root search.
+    private int score; // Score of the deepest iteration that finished during the last move.
+    private long nodes; // Nodes visited during the last move.
+    private long moveNanos; // Time taken by the last move.
+    private long slotDeadline; // System.nanoTime() after which the slot search gives up.
+    private int slotBestColumn; // Best column of the slot search's root so far, or -1.
 
     /**
      * Constructs an agent that utilizes the minimax algorithm with alpha-beta pruning.
@@ -28,8 +77,33 @@ public class MiniConnorMaxAgent extends Agent {
      * @param depth  int
      */
     public MiniConnorMaxAgent(Connect4Game game, boolean iAmRed, int depth) {
+        this(game, iAmRed, depth, 0);
+    }
+
+    /**
+     * Constructs an agent that utilizes the minimax algorithm with alpha-beta pruning under a time limit.
+     * Each move searches depth 1, 2, 3... until the time runs out or depth is reached, and plays the best move of the
+     * deepest search. A search that is cut off part way still counts if it finished the first column it tried.
+     * <p>
+     * Boards too large for a Connect4Bitboard are still played, with the plain alpha-beta search over the game's
+     * slots that the agent used before it had bitboards. That search has no transposition table, threads,
+     * pondering, solver or book, so those settings only apply to boards with a bitboard.
+     *
+     * @param game       Connect4Game
+     * @param iAmRed     boolean
+     * @param depth      int the deepest search allowed
+     * @param moveMillis long milliseconds per move, or 0 to always search to depth
+     */
+    public MiniConnorMaxAgent(Connect4Game game, boolean iAmRed, int depth, long moveMillis) {
         super(game, iAmRed);
+        if (depth < 1) {
+            throw new IllegalArgumentException("Depth must be at least 1, got " + depth);
+        }
+        if (moveMillis < 0) {
+            throw new IllegalArgumentException("Move time cannot be negative, got " + moveMillis);
+        }
         DEPTH = depth;
+        MOVE_MILLIS = moveMillis;
         // The player represented as a character.
         int colCnt = myGame.getColumnCount();
         COLUMN_PRIORITY = new int[colCnt];
@@ -37,6 +111,238 @@ public class MiniConnorMaxAgent extends Agent {
             int index = (colCnt / 2 + ((i % 2 == 0) ? i / 2 : colCnt - (i + 1) / 2)) % colCnt;
             COLUMN_PRIORITY[i] = index;
         }
+        if (myGame.hasBitboard()) {
+            evaluation = new Evaluator(LineTable.forSize(colCnt, myGame.getRowCount()), weights);
+            search = new MinimaxSearch(this, iAmRed, COLUMN_PRIORITY, myGame.getBitboard(),
+                    new TranspositionTable(DEFAULT_TABLE_MB));
+        } else {
+            search = null;
+        }
+    }
+
+    /**
+     * Sets the weights of the evaluation, replacing the built-in defaults or the weights set before. The
+     * transposition table is emptied.
+     *
+     * @param weights EvaluationWeights
+     */
+    public void setWeights(EvaluationWeights weights) {
+        stopPondering();
+        this.weights = weights;
+        workers = null;
+        if (search == null) {
+            return;
+        }
+        evaluation = new Evaluator(LineTable.forSize(myGame.getColumnCount(), myGame.getRowCount()), weights);
+        search.setWeights(weights);
+        search.getTable().clear(); // Its scores were found with the old weights.
+    }
+
+    /**
+     * @return the weights of the evaluation.
+     */
+    public EvaluationWeights getWeights() {
+        return weights;
+    }
+
+    /**
+     * Sets how much memory the transposition table may use. When searching in parallel the budget is shared between
+     * the threads. The table is emptied.
+     *
+     * @param megabytes int
+     */
+    public void setTableSize(int megabytes) {
+        if (search != null) {
+            search.setTable(new TranspositionTable(megabytes));
+        }
+        tableMegabytes = megabytes;
+        workers = null;
+        solver = null;
+    }
+
+    /**
+     * Keeps the transposition tables from one move to the next, or empties them before every move. Kept tables
+     * start each move already holding the positions searched on the previous turns, so the search gets deeper in the
+     * same time. Entries from earlier moves are aged out by the table's generation counter. On by default.
+     * <p>
+     * A position's key does not say whose turn it is, which only follows from the tokens once it is known who moved
+     * first. So the tables are still emptied when a game starts with the other player moving first than the games
+     * they were filled in.
+     *
+     * @param reuseTables boolean false to start every move from empty tables
+     */
+    public void setTableReuse(boolean reuseTables) {
+        this.reuseTables = reuseTables;
+    }
+
+    /**
+     * Turns pondering on or off. When on, the agent keeps searching on a background thread after each move while the
+     * opponent thinks: first the reply the last search expected, then the other replies. Once the opponent has moved,
+     * a reply searched to full depth is played straight away, and otherwise the search starts from a table already
+     * holding the pondered positions. The background thread only works on its own copy of the board, never on the
+     * game, and is stopped at the start of the next move. Pondering runs on one thread whatever the parallelism, and
+     * its table is kept even if table reuse is off.
+     *
+     * @param pondering boolean
+     */
+    public void setPondering(boolean pondering) {
+        this.pondering = pondering;
+        if (!pondering) {
+            stopPondering();
+        }
+    }
+
+    /**
+     * Stops pondering and waits for the background thread to finish. Call it once the game is over, since the agent
+     * only stops pondering by itself when it is asked for its next move or its pondering time runs out.
+     *
+     * @return true if the agent was pondering
+     */
+    public boolean stopPondering() {
+        if (ponderThread == null) {
+            return false;
+        }
+        ponderStop = true; // Set before stopping the search, so a reply started in between sees it.
+        ponderSearch.stop();
+        boolean interrupted = false;
+        while (ponderThread.isAlive()) {
+            try {
+                ponderThread.join();
+            } catch (InterruptedException e) {
+                interrupted = true; // The thread still uses the table, so it must be waited for.
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        ponderThread = null;
+        return true;
+    }
+
+    /**
+     * Sets how many threads search each move. With more than one thread the moves at the root are shared out between
+     * threads, each with its own copy of the board. The root moves are taken in the same order as the single thread
+     * search, the first one with a full window and the rest against the best score so far, and ties go to the
+     * earlier move, so the column played is the same as the single thread search at the same depth.
+     *
+     * @param threads int
+     */
+    public void setParallelism(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1, got " + threads);
+        }
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        parallelism = threads;
+        workers = null;
+        if (threads > 1) {
+            pool = new ForkJoinPool(threads);
+        }
+    }
+
+    /**
+     * Chooses how the threads work together when parallelism is above 1. In Lazy SMP mode every thread searches the
+     * whole position and they share one lock-free transposition table using the full memory budget. Half of the
+     * helpers run one ply ahead of the main thread, so they fill the table with the results the main thread needs
+     * next. Only the main thread's result is played, so the column may differ from the single thread search. With a
+     * single thread this is a plain iterative deepening search to the full depth.
+     *
+     * @param lazySmp boolean true for Lazy SMP, false to split the root moves
+     */
+    public void setLazySmp(boolean lazySmp) {
+        this.lazySmp = lazySmp;
+        workers = null;
+    }
+
+    /**
+     * Sets how few empty slots there must be before the agent stops searching to DEPTH and solves the position
+     * exactly instead. The solver plays a proven win as fast as possible and a proven loss as slowly as possible.
+     * Under a time limit the solver gets half of the move's time and the normal search takes over if it runs out.
+     *
+     * @param emptySlots int 0 to never solve
+     */
+    public void setSolverThreshold(int emptySlots) {
+        if (emptySlots < 0) {
+            throw new IllegalArgumentException("The solver threshold cannot be negative, got " + emptySlots);
+        }
+        solverThreshold = emptySlots;
+    }
+
+    /**
+     * Turns killer move and history move ordering on or off. When off, the table move is tried first and the other
+     * columns from the middle out, as in the plain search.
+     *
+     * @param dynamicOrdering boolean
+     */
+    public void setDynamicOrdering(boolean dynamicOrdering) {
+        this.dynamicOrdering = dynamicOrdering;
+        if (search != null) {
+            search.setDynamicOrdering(dynamicOrdering);
+        }
+        workers = null;
+    }
+
+    /**
+     * Chooses the search algorithm: plain minimax with alpha-beta pruning, principal variation search, or MTD(f). All
+     * of them find the same score at the same depth, so this only changes how many nodes it takes. They all run under
+     * the same iterative deepening and time limit. The transposition table is emptied, since minimax stores scores
+     * from the agent's point of view and the others from the side to move.
+     *
+     * @param algorithm MinimaxSearch.Algorithm
+     */
+    public void setAlgorithm(MinimaxSearch.Algorithm algorithm) {
+        stopPondering();
+        this.algorithm = algorithm;
+        workers = null;
+        if (search != null) {
+            search.setAlgorithm(algorithm);
+            search.getTable().clear();
+        }
+    }
+
+    /**
+     * Turns the threat shortcuts on or off. When on, the search takes an immediate win without looking at other
+     * moves, only tries the blocking move against a single threat, and skips moves that let the opponent win on top.
+     * The scores are the same either way, only the number of nodes changes.
+     *
+     * @param threatShortcuts boolean
+     */
+    public void setThreatShortcuts(boolean threatShortcuts) {
+        this.threatShortcuts = threatShortcuts;
+        if (search != null) {
+            search.setThreatShortcuts(threatShortcuts);
+        }
+        workers = null;
+    }
+
+    /**
+     * Gives the agent an opening book. Positions found in the book are played straight away, and every other
+     * position is searched as usual.
+     *
+     * @param book OpeningBook, or null to always search
+     */
+    public void setOpeningBook(OpeningBook book) {
+        this.book = book;
+    }
+
+    /**
+     * Turns printing of search statistics after every move on or off.
+     *
+     * @param verbose boolean
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Returns the transposition table so its statistics can be read after a move.
+     *
+     * @return TranspositionTable, or null if the board is too large for a bitboard
+     */
+    public TranspositionTable getTable() {
+        return search == null ? null : search.getTable();
     }
 
     /**
@@ -44,261 +350,729 @@ public class MiniConnorMaxAgent extends Agent {
      * to determine which one has the highest score.
      */
     public void move() {
+        if (search == null) {
+            moveOnSlots();
+            return;
+        }
+        long start = System.nanoTime();
+        boolean pondered = stopPondering();
+        Connect4Bitboard position = myGame.getBitboard();
+        int firstMover = position.getMoveCount() % 2 == 0 ? 1 : 0;
+        if (tableFirstMover != firstMover) { // A new game, with the turns the other way round.
+            if (tableFirstMover >= 0) {
+                search.getTable().clear();
+                workers = null;
+            }
+            tableFirstMover = firstMover;
+        }
+        long deadline = MOVE_MILLIS == 0 ? Long.MAX_VALUE : start + MOVE_MILLIS * 1000000;
+        solvedResult = null;
+        ponderHit = false;
+        int bestColumn = book == null ? -1 : book.getMove(position, iAmRed);
+        bookMove = bestColumn >= 0;
+        if (bookMove) {
+            score = book.getScore(position, iAmRed);
+            completedDepth = book.getSearchDepth();
+            nodes = 0;
+        }
+        int empty = position.getColumnCount() * position.getRowCount() - position.getMoveCount();
+        if (bestColumn < 0 && empty <= solverThreshold) {
+            bestColumn = solve(position, MOVE_MILLIS == 0 ? Long.MAX_VALUE : start + MOVE_MILLIS * 500000);
+        }
+        if (bestColumn < 0 && pondered) {
+            bestColumn = ponderResult(position);
+        }
+        if (bestColumn < 0) {
+            TranspositionTable prepared = null;
+            for (MinimaxSearch s : searches()) {
+                s.getBoard().copyFrom(position);
+                if (s.getTable() != prepared) { // A shared table only needs preparing once.
+                    prepared = s.getTable();
+                    if (pondered && prepared == search.getTable()) {
+                        prepared.resetStats(); // Pondering already started this move's generation.
+                    } else if (reuseTables) {
+                        prepared.newSearch();
+                        prepared.resetStats();
+                    } else {
+                        prepared.clear();
+                    }
+                }
+                s.reset(deadline);
+            }
+            bestColumn = iterativeDeepening(position);
+        }
+        myGame.makeMove(bestColumn, iAmRed);
+        moveNanos = System.nanoTime() - start;
+        if (verbose) {
+            System.out.println(report());
+        }
+        if (pondering) {
+            position.makeMove(bestColumn, iAmRed);
+            if (!position.hasWon(iAmRed) && !position.isFull()) {
+                startPondering(position);
+            }
+        }
+    }
+
+    /**
+     * Starts searching the replies to our last move on a background thread.
+     *
+     * @param after Connect4Bitboard the position after our move, owned by the pondering from now on
+     */
+    private void startPondering(Connect4Bitboard after) {
+        ponderSearch = new MinimaxSearch(this, iAmRed, COLUMN_PRIORITY, new Connect4Bitboard(after),
+                search.getTable());
+        ponderSearch.setDynamicOrdering(dynamicOrdering);
+        ponderSearch.setThreatShortcuts(threatShortcuts);
+        ponderSearch.setAlgorithm(algorithm);
+        ponderPosition = after;
+        int width = after.getColumnCount();
+        ponderMoves = new int[width];
+        ponderDepths = new int[width];
+        ponderScores = new int[width];
+        Arrays.fill(ponderMoves, -1);
+        ponderNodes = 0;
+        ponderStop = false;
+        search.getTable().newSearch(); // Pondered entries belong to the next move.
+        long deadline = MOVE_MILLIS == 0 ? Long.MAX_VALUE : System.nanoTime() + PONDER_MOVES * MOVE_MILLIS * 1000000;
+        ponderThread = new Thread(() -> ponder(deadline), "ponder " + this);
+        ponderThread.setDaemon(true);
+        ponderThread.start();
+    }
+
+    /**
+     * Runs on the pondering thread. Searches our move after each reply of the opponent, the expected reply first,
+     * the same way move() would, and keeps the deepest result for each reply.
+     *
+     * @param deadline long a System.nanoTime() value, or Long.MAX_VALUE for no limit
+     */
+    private void ponder(long deadline) {
+        int[] replies = new int[COLUMN_PRIORITY.length];
+        int count = 0;
+        long entry = search.getTable().probe(ponderPosition.getKey());
+        int expected = entry == 0 ? -1 : TranspositionTable.move(entry);
+        if (expected >= 0 && ponderPosition.canPlay(expected)) {
+            replies[count++] = expected;
+        }
+        for (int col : COLUMN_PRIORITY) {
+            if (col != expected && ponderPosition.canPlay(col)) {
+                replies[count++] = col;
+            }
+        }
+        Connect4Bitboard board = ponderSearch.getBoard();
+        for (int i = 0; i < count; i++) {
+            int reply = replies[i];
+            board.copyFrom(ponderPosition);
+            board.makeMove(reply, !iAmRed);
+            if (board.hasWon(!iAmRed) || board.isFull()) {
+                continue;
+            }
+            ponderSearch.reset(deadline);
+            if (ponderStop) { // Checked after the reset, which would forget a stop asked for before it.
+                return;
+            }
+            int maxDepth = maxDepth(board);
+            for (int depth = MOVE_MILLIS == 0 ? DEPTH : 1; depth <= maxDepth; depth++) {
+                int value = ponderSearch.search(depth);
+                if (ponderSearch.isAborted()) {
+                    break;
+                }
+                ponderMoves[reply] = ponderSearch.getBestMove();
+                ponderDepths[reply] = depth;
+                ponderScores[reply] = value;
+            }
+            ponderNodes += ponderSearch.getNodes();
+            if (ponderSearch.isAborted()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Looks up the opponent's actual reply in the pondering results.
+     *
+     * @param position Connect4Bitboard the position now
+     * @return our column if the reply was pondered to the full depth, otherwise -1
+     */
+    private int ponderResult(Connect4Bitboard position) {
+        if (position.getMoveCount() != ponderPosition.getMoveCount() + 1) {
+            return -1;
+        }
+        for (int col = 0; col < ponderMoves.length; col++) {
+            if (ponderMoves[col] < 0 || ponderDepths[col] < maxDepth(position)) {
+                continue;
+            }
+            ponderPosition.makeMove(col, !iAmRed);
+            boolean same = ponderPosition.getMask() == position.getMask()
+                    && ponderPosition.getRed() == position.getRed();
+            ponderPosition.undoMove(col);
+            if (same) {
+                ponderHit = true;
+                completedDepth = ponderDepths[col];
+                score = ponderScores[col];
+                nodes = ponderNodes;
+                return ponderMoves[col];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the deepest iteration move() searches in a position.
+     *
+     * @param game Connect4Bitboard
+     * @return int
+     */
+    private int maxDepth(Connect4Bitboard game) {
+        if (MOVE_MILLIS == 0) {
+            return DEPTH;
+        }
+        return Math.min(DEPTH, game.getColumnCount() * game.getRowCount() - game.getMoveCount());
+    }
+
+    /**
+     * Plays a move on a board too large for a bitboard. Moves are made and taken back on the slots of a copy of the
+     * game, and the leaves are scored by evaluateSlots. Like the bitboard search it deepens one ply at a time under a
+     * time limit, and searches DEPTH straight away without one.
+     */
+    private void moveOnSlots() {
+        long start = System.nanoTime();
+        slotDeadline = MOVE_MILLIS == 0 ? Long.MAX_VALUE : start + MOVE_MILLIS * 1000000;
         Connect4Game sim = new Connect4Game(myGame);
-        int bestColumn = minimax(sim, DEPTH, true, Integer.MIN_VALUE, Integer.MAX_VALUE)[0];
-        placeSlot(myGame, myGame.getColumn(bestColumn), iAmRed);
+        int empty = 0;
+        for (char[] row : sim.getBoardMatrix()) {
+            for (char c : row) {
+                if (c == 'B') {
+                    empty++;
+                }
+            }
+        }
+        int bestColumn = -1;
+        completedDepth = 0;
+        aborted = false;
+        nodes = 0;
+        for (int depth = MOVE_MILLIS > 0 ? 1 : DEPTH; depth <= Math.min(DEPTH, empty); depth++) {
+            slotBestColumn = -1;
+            int value = slotMinimax(sim, depth, empty, true, Integer.MIN_VALUE, Integer.MAX_VALUE, true);
+            if (slotBestColumn >= 0) {
+                bestColumn = slotBestColumn;
+            }
+            if (aborted) {
+                break;
+            }
+            completedDepth = depth;
+            score = value;
+        }
+        for (int i = 0; bestColumn < 0; i++) { // Not even depth 1 finished, so fall back to the first open column.
+            if (!myGame.getColumn(COLUMN_PRIORITY[i]).getIsFull()) {
+                bestColumn = COLUMN_PRIORITY[i];
+            }
+        }
+        myGame.makeMove(bestColumn, iAmRed);
+        moveNanos = System.nanoTime() - start;
+        if (verbose) {
+            System.out.println(report());
+        }
     }
 
     /**
-     * Minimax algorithm
-     * Minimizes the possible loss for the worst case. Gains are referred to as "maximum" and losses are referred to as
-     * "minimum". Maximum value returns the highest value that the player can be sure to get without knowing the
-     * actions of the other player. Lowest value returns the lowest value that the opposing player can be sure to get
-     * without knowing the actions of the other player.
-     * Alpha-beta pruning is implemented to shorten the length of the binary tree.
+     * Minimax with alpha-beta pruning over the slots of a game, for boards too large for a bitboard. Scores are the
+     * same as the bitboard search gives without a table: wins count the remaining depth so quicker wins score higher.
      *
-     * @param game         Connect4Game
+     * @param game         Connect4Game a copy the search may change
      * @param depth        int
+     * @param empty        int the number of empty slots
      * @param isMaximizing boolean
      * @param alpha        int
      * @param beta         int
+     * @param root         boolean true at the root, where the best column is kept in slotBestColumn
      * @return score
      */
-    private int[] minimax(Connect4Game game, int depth, boolean isMaximizing, int alpha, int beta) {
-        // Check for a leaf node.
-        if (depth <= 0 || game.boardFull() || game.gameWon() != 'N') {
-            return new int[]{lastCol, evaluate(game, depth)};
+    private int slotMinimax(Connect4Game game, int depth, int empty, boolean isMaximizing, int alpha, int beta,
+                            boolean root) {
+        if ((++nodes & 1023) == 0 && System.nanoTime() > slotDeadline) {
+            aborted = true;
         }
-
-        // Returns the largest value that the minimizing player chose.
-        // Prunes any branches that obviously do not benefit the minimizing player.
-        int bestCol = Integer.MIN_VALUE;
-        if (isMaximizing) {
-            int highestScore = Integer.MIN_VALUE;
-            for (int col : COLUMN_PRIORITY) {
-                if (game.getColumn(col).getIsFull()) {
-                    continue;
-                }
-                int topRow = getTopRow(game, game.getColumn(col));
-                lastCol = col;
-                placeSlot(game, game.getColumn(col), iAmRed);
-                int score = minimax(game, depth - 1, false, alpha, beta)[1];
-                game.getColumn(col).getSlot(topRow).clear();
-                alpha = Math.max(score, alpha);
-                if (score > highestScore) {
-                    bestCol = col;
-                    highestScore = score;
-                }
-                if (beta <= alpha) {
-                    break;
+        if (aborted) {
+            return 0;
+        }
+        if (depth <= 0 || empty == 0) {
+            int score = evaluateSlots(game);
+            return iAmRed ? score : -score;
+        }
+        int bestScore = isMaximizing ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+        for (int col : COLUMN_PRIORITY) {
+            if (game.getColumn(col).getIsFull()) {
+                continue;
+            }
+            game.makeMove(col, isMaximizing == iAmRed);
+            int score;
+            if (game.lastMoveWon()) { // Only the move just made can have won.
+                score = isMaximizing ? WIN_SCORE + depth - 1 : -WIN_SCORE - depth + 1;
+            } else {
+                score = slotMinimax(game, depth - 1, empty - 1, !isMaximizing, alpha, beta, false);
+            }
+            game.undoMove(col);
+            if (aborted) {
+                break;
+            }
+            if (isMaximizing ? score > bestScore : score < bestScore) {
+                bestScore = score;
+                if (root) {
+                    slotBestColumn = col;
                 }
             }
-            return new int[]{bestCol, highestScore};
+            if (isMaximizing) {
+                alpha = Math.max(alpha, score);
+            } else {
+                beta = Math.min(beta, score);
+            }
+            if (beta <= alpha) {
+                break;
+            }
         }
-        // Returns the smallest value that the maximizing player chose.
-        // Prunes any branches that obviously do not benefit the maximizing player.
-        else {
-            int lowestScore = Integer.MAX_VALUE;
-            for (int col : COLUMN_PRIORITY) {
-                if (game.getColumn(col).getIsFull()) {
-                    continue;
-                }
-                int topRow = getTopRow(game, game.getColumn(col));
-                lastCol = col;
-                placeSlot(game, game.getColumn(col), !iAmRed);
-                int score = minimax(game, depth - 1, true, alpha, beta)[1];
-                game.getColumn(col).getSlot(topRow).clear();
-                beta = Math.min(score, beta);
-                if (score < lowestScore) {
-                    bestCol = col;
-                    lowestScore = score;
-                }
-                if (beta <= alpha) {
-                    break;
+        return bestScore;
+    }
+
+    /**
+     * Scores a board too large for a bitboard from red's point of view. Every line of four slots is scored by how
+     * many tokens of each color it holds, with the same weights as the lines of Evaluator, but threats are not judged
+     * by their row. Boards this large have enough lines to add up past the win scores, so the score is cut off at
+     * EvaluationWeights.MAX_SCORE like Evaluator does.
+     *
+     * @param game Connect4Game
+     * @return score
+     */
+    private int evaluateSlots(Connect4Game game) {
+        char[][] board = game.getBoardMatrix();
+        int rows = game.getRowCount();
+        int cols = game.getColumnCount();
+        int score = 0;
+        for (int[] step : LINE_STEPS) {
+            for (int col = 0; col + 3 * step[0] < cols; col++) {
+                for (int row = 0; row < rows; row++) {
+                    int endRow = row + 3 * step[1];
+                    if (endRow < 0 || endRow >= rows) {
+                        continue;
+                    }
+                    int countRed = 0;
+                    int countYellow = 0;
+                    for (int i = 0; i < 4; i++) {
+                        char c = board[row + i * step[1]][col + i * step[0]];
+                        if (c == 'R') {
+                            countRed++;
+                        } else if (c == 'Y') {
+                            countYellow++;
+                        }
+                    }
+                    score += evaluateSet(countRed, countYellow, step[1] == 0);
                 }
             }
-            return new int[]{bestCol, lowestScore};
         }
+        return Math.max(-EvaluationWeights.MAX_SCORE, Math.min(EvaluationWeights.MAX_SCORE, score));
     }
 
     /**
-     * Places a slot at the top of the desired column.
+     * Scores a line of four slots for red.
      *
-     * @param game   Connect4Game
-     * @param column Connect4Column
-     * @param isRed  boolean
+     * @param countRed    int
+     * @param countYellow int
+     * @param horizontal  boolean
+     * @return evaluation
      */
-    private void placeSlot(Connect4Game game, Connect4Column column, boolean isRed) {
-        if (isRed) {
-            Objects.requireNonNull(getTopSlot(game, column)).addRed();
-        } else {
-            Objects.requireNonNull(getTopSlot(game, column)).addYellow();
+    private int evaluateSet(int countRed, int countYellow, boolean horizontal) {
+        int countEmpty = 4 - countRed - countYellow;
+        int three = weights.get(horizontal ? EvaluationWeights.THREE_HORIZONTAL : EvaluationWeights.THREE);
+        int two = weights.get(horizontal ? EvaluationWeights.TWO_HORIZONTAL : EvaluationWeights.TWO);
+        if (countRed == 3 && countEmpty == 1) {
+            return three;
+        } else if (countYellow == 3 && countEmpty == 1) {
+            return -three;
+        } else if (countRed == 2 && countYellow == 0) {
+            return two;
+        } else if (countYellow == 2 && countRed == 0) {
+            return -two;
         }
+        return 0;
     }
 
     /**
-     * Sets the appropriate evaluation for each group of characters which represent either a row, column, or diagonal.
+     * Solves the position exactly and remembers the proven result.
      *
-     * @param set char[]
-     * @return evaluation
+     * @param game     Connect4Bitboard
+     * @param deadline long a System.nanoTime() value, or Long.MAX_VALUE for no limit
+     * @return the best column, or -1 if the time ran out
      */
-    private int evaluateSet(char[] set) {
-        int countEmpty = countEmpty(set);
-        // exit quickly
-        if (countEmpty == 4) {
-            return 0;
+    private int solve(Connect4Bitboard game, long deadline) {
+        if (solver == null) {
+            solver = new EndgameSolver(myGame.getBitboard(), new TranspositionTable(tableMegabytes));
         }
-        int countMe = countGroup(set, iAmRed);
-        int countOther = countGroup(set, !iAmRed);
-        // evaluate group of 3.
-        if (countMe == 3 && countEmpty == 1) {
-            return 5000;
-        } else if (countOther == 3 && countEmpty == 1) {
-            return -5000;
-            // evaluate groups of 2
-        } else if (countMe == 2 && countOther == 0) {
-            return 2500;
-        } else if (countOther == 2 & countMe == 0) {
-            return -2500;
+        solver.getBoard().copyFrom(game);
+        solver.getTable().newSearch();
+        solver.getTable().resetStats();
+        int score = solver.solve(iAmRed, deadline);
+        int col = solver.isAborted() ? -1 : solver.bestMove(iAmRed, score);
+        nodes = solver.getNodes();
+        if (col >= 0) {
+            solvedResult = solver.describe(score, game.getMoveCount());
+            completedDepth = solver.distance(score, game.getMoveCount());
         }
+        return col;
+    }
 
-        return 0;
+    /**
+     * Searches one ply deeper at a time until the time budget runs out. With no time budget only DEPTH is searched.
+     * The best column of each iteration is tried first by the next one.
+     *
+     * @param game Connect4Bitboard
+     * @return the best column found
+     */
+    private int iterativeDeepening(Connect4Bitboard game) {
+        int maxDepth = maxDepth(game);
+        int depth = MOVE_MILLIS > 0 ? 1 : DEPTH;
+        boolean lazy = lazySmp;
+        if (lazy) { // The main thread deepens too, so it can use what the helpers put in the table.
+            depth = 1;
+            startHelpers(maxDepth);
+        }
+        int bestColumn = -1;
+        completedDepth = 0;
+        aborted = false;
+        for (; depth <= maxDepth; depth++) {
+            int col = parallelism > 1 && !lazy ? parallelRoot(game, depth, bestColumn) : searchRoot(depth);
+            if (col >= 0) {
+                bestColumn = col;
+            }
+            if (aborted) {
+                break;
+            }
+            completedDepth = depth;
+            score = iterationScore;
+        }
+        if (lazy) {
+            stopHelpers();
+        }
+        nodes = 0;
+        for (MinimaxSearch s : searches()) {
+            nodes += s.getNodes();
+        }
+        if (bestColumn < 0) { // Not even depth 1 finished, so fall back to the first open column.
+            for (int col : COLUMN_PRIORITY) {
+                if (game.canPlay(col)) {
+                    return col;
+                }
+            }
+        }
+        return bestColumn;
+    }
 
+    /**
+     * Searches the root on this thread. The best column of the previous iteration is already in the transposition
+     * table, so it is tried first.
+     *
+     * @param depth int
+     * @return the best column, or -1 if the time ran out before any column finished
+     */
+    private int searchRoot(int depth) {
+        iterationScore = search.search(depth);
+        aborted = search.isAborted();
+        return search.getBestMove();
     }
 
     /**
-     * Returns the total score of the board, negative if it is in the opposing player's favor and positive if it is
-     * in the agent's favor.
+     * Splits the root moves between the worker threads. The moves are taken in the order the single thread search
+     * tries them, the previous iteration's best column first. The first move is searched alone for its exact score.
+     * Then each worker takes the next unsearched move and searches it with alpha one below the best score found so
+     * far, so most moves only have to be shown to be worse. A move that ties the best still gets its exact score
+     * that way, and the first move in order with the highest score wins, which is the same column the single thread
+     * alpha-beta search picks.
      *
-     * @param game Connect4Game
-     * @return score
+     * @param game         Connect4Bitboard
+     * @param depth        int
+     * @param previousBest int the column searched first, or -1
+     * @return the best column, or -1 if the time ran out before the first column finished
      */
-    public int evaluate(Connect4Game game, int depth) { // basic heuristics
-        int score = 0;
-        char[][] board = game.getBoardMatrix();
-        int[] openColumns = getOpenColumns(game);
-        if (game.gameWon() == (iAmRed ? 'R' : 'Y')) {
-            return 1000000 + depth;
+    private int parallelRoot(Connect4Bitboard game, int depth, int previousBest) {
+        MinimaxSearch[] all = searches();
+        MinimaxSearch lead = all[0];
+        int[] order = new int[game.getColumnCount()];
+        int moves = lead.rootMoves(depth, previousBest, order);
+        if (moves == 0) { // The threat shortcuts decide the root without searching.
+            iterationScore = lead.search(depth);
+            aborted |= lead.isAborted();
+            return lead.getBestMove();
         }
-        if (game.gameWon() == (iAmRed ? 'Y' : 'R')) {
-            return -1000000 - depth;
+        int[] scores = new int[moves];
+        boolean[] exact = new boolean[moves]; // Set for the moves whose score is known exactly.
+        scores[0] = lead.searchMove(order[0], depth, Integer.MIN_VALUE);
+        if (lead.isAborted()) {
+            aborted = true;
+            return -1;
         }
-        // Evaluates vertical threats
-        for (int openColumn : openColumns) {
-            int topIndex = getTopRow(game, game.getColumn(openColumn));
-            if (topIndex >= game.getRowCount() - 3) {
-                continue;
-            }
-            score += evaluateSet(new char[]{board[topIndex][openColumn], board[topIndex + 1][openColumn],
-                    board[topIndex + 2][openColumn], board[topIndex + 3][openColumn]});
+        exact[0] = true;
+        AtomicInteger best = new AtomicInteger(scores[0]); // Highest exact score so far.
+        AtomicInteger next = new AtomicInteger(1);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (MinimaxSearch worker : all) {
+            tasks.add(() -> {
+                int i;
+                while (!worker.isAborted() && (i = next.getAndIncrement()) < moves) {
+                    int alpha = best.get() - 1;
+                    int score = worker.searchMove(order[i], depth, alpha);
+                    if (!worker.isAborted() && score > alpha) {
+                        scores[i] = score;
+                        exact[i] = true;
+                        best.accumulateAndGet(score, Math::max);
+                    }
+                }
+                return null;
+            });
         }
-        // Evaluates horizontal threats
-        for (int i = game.getRowCount() - 1; i >= 0; i--) {
-            for (int j = 0; j < game.getColumnCount() - 3; j++) {
-                score += (int) (evaluateSet(Arrays.copyOfRange(board[i], j, j + 4)) * 1.5);
-            }
+        pool.invokeAll(tasks);
+        for (MinimaxSearch worker : all) {
+            aborted |= worker.isAborted();
         }
-        // Evaluates upper upward diagonals and lower downward diagonals
-        for (int i = 2; i < game.getRowCount(); i++) {
-            for (int j = 0; j < i - 1; j++) {
-                score += evaluateSet(new char[]{board[i][j], board[i - 1][j + 1], board[i - 2][j + 2]});
-            }
-            for (int j = game.getRowCount() - 1; j >= game.getRowCount() - i + 2; j--) {
-                score += evaluateSet(new char[]{board[j][i], board[j - 1][i - 1], board[j - 2][i - 2]});
+        int bestIndex = 0;
+        for (int i = 1; i < moves; i++) {
+            if (exact[i] && scores[i] > scores[bestIndex]) {
+                bestIndex = i;
             }
         }
-        // Evaluates the lower upward diagonals && upper downward diagonals
-        for (int i = 1; i < game.getColumnCount(); i++) {
-            for (int j = game.getRowCount() - i; j > 1; j--) {
-                score += evaluateSet(new char[]{board[j][i], board[j - 1][i + 1], board[j - 2][i + 2]});
+        iterationScore = scores[bestIndex];
+        return order[bestIndex];
+    }
+
+    /**
+     * Starts the Lazy SMP helpers on the pool. Each helper deepens on its own, odd helpers one ply ahead of the main
+     * thread, until it reaches maxDepth or is stopped.
+     *
+     * @param maxDepth int
+     */
+    private void startHelpers(int maxDepth) {
+        MinimaxSearch[] all = searches();
+        helpers = new ArrayList<>();
+        for (int i = 1; i < all.length; i++) {
+            MinimaxSearch helper = all[i];
+            int offset = i % 2;
+            helpers.add(pool.submit(() -> {
+                for (int depth = 1 + offset; depth <= maxDepth && !helper.isAborted(); depth++) {
+                    helper.search(depth);
+                }
+            }));
+        }
+    }
+
+    /**
+     * Stops the Lazy SMP helpers and waits until they have all returned.
+     */
+    private void stopHelpers() {
+        MinimaxSearch[] all = searches();
+        for (int i = 1; i < all.length; i++) {
+            all[i].stop();
+        }
+        for (Future<?> helper : helpers) {
+            try {
+                helper.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("A search helper failed", e.getCause());
             }
-            for (int j = 0; j < game.getRowCount() - i - 1; j++) {
-                score += evaluateSet(new char[]{board[j][i], board[j + 1][i + 1], board[j + 2][i + 2]});
+        }
+        helpers = null;
+    }
+
+    /**
+     * Returns the searches used for the next move: the agent's own search, or one per thread in parallel mode.
+     *
+     * @return MinimaxSearch[]
+     */
+    private MinimaxSearch[] searches() {
+        if (parallelism == 1) {
+            return new MinimaxSearch[]{search};
+        }
+        if (workers == null) {
+            workers = new MinimaxSearch[parallelism];
+            int megabytes = Math.max(1, tableMegabytes / parallelism);
+            for (int i = 0; i < parallelism; i++) {
+                if (lazySmp && i == 0) {
+                    workers[i] = search;
+                } else {
+                    workers[i] = new MinimaxSearch(this, iAmRed, COLUMN_PRIORITY, myGame.getBitboard(),
+                            lazySmp ? search.getTable() : new TranspositionTable(megabytes));
+                    workers[i].setDynamicOrdering(dynamicOrdering);
+                    workers[i].setThreatShortcuts(threatShortcuts);
+                    workers[i].setAlgorithm(algorithm);
+                }
             }
         }
-        return score;
+        return workers;
     }
 
     /**
-     * Returns the index of the first empty space above filled slots. Returns -1 if no indices are found.
+     * Returns the depth of the deepest search that finished during the last move.
      *
-     * @param board  Connect4Game
-     * @param column Connect4Column
      * @return int
      */
-    private int getTopRow(Connect4Game board, Connect4Column column) {
-        int index = -1;
-        for (int i = 0; i < board.getRowCount(); i++) {
-            if (!(column.getSlot(i).getIsFilled()))
-                index = i;
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    /**
+     * Returns the time taken by the last move in nanoseconds.
+     *
+     * @return long
+     */
+    public long getMoveNanos() {
+        return moveNanos;
+    }
+
+    /**
+     * Returns the nodes per second reached by each thread during the last move.
+     *
+     * @return long[]
+     */
+    public long[] getNodesPerSecond() {
+        if (search == null || solvedResult != null || bookMove || ponderHit) { // These moves are not searched by the workers.
+            return new long[]{nodes * 1000000000L / Math.max(1, moveNanos)};
+        }
+        MinimaxSearch[] all = searches();
+        long[] nps = new long[all.length];
+        for (int i = 0; i < all.length; i++) {
+            nps[i] = all[i].getNodes() * 1000000000L / Math.max(1, moveNanos);
         }
-        return index;
+        return nps;
     }
 
     /**
-     * Counts the amount of yellows or reds are in a group of chars.
+     * Describes the last move's search: depth, nodes, speed of each thread and transposition table statistics.
      *
-     * @param set   char[]
-     * @param isRed boolean
-     * @return int
+     * @return String
      */
-    private int countGroup(char[] set, boolean isRed) {
-        int count = 0;
-        for (char c : set) {
-            if (c == (isRed ? 'R' : 'Y')) {
-                count++;
+    public String report() {
+        if (search == null) {
+            return this + ": slot search, depth " + completedDepth + ", " + nodes + " nodes in "
+                    + moveNanos / 1000000 + " ms";
+        }
+        if (bookMove) {
+            return this + ": book move, score " + score + " at depth " + completedDepth;
+        }
+        if (ponderHit) {
+            return this + ": ponder hit, score " + score + " at depth " + completedDepth + ", " + nodes
+                    + " nodes pondered";
+        }
+        if (solvedResult != null) {
+            return this + ": solved, " + solvedResult + ", " + nodes + " nodes in " + moveNanos / 1000000 + " ms, "
+                    + solver.getTable().report();
+        }
+        String report = this + ": depth " + completedDepth + ", " + nodes + " nodes in " + moveNanos / 1000000
+                + " ms, nps per thread " + Arrays.toString(getNodesPerSecond())
+                + String.format(", first move cutoffs %.1f%%", getFirstMoveCutoffRate() * 100);
+        if (algorithm == MinimaxSearch.Algorithm.MTDF) {
+            long passes = 0;
+            for (MinimaxSearch s : searches()) {
+                passes += s.getPasses();
             }
+            report += ", " + passes + " MTD(f) passes";
+        }
+        if (parallelism == 1 || lazySmp) {
+            report += ", " + search.getTable().report();
         }
-        return count;
+        return report;
     }
 
     /**
-     * Returns the count of the amount of empty spaces in a group of chars.
+     * Returns the share of beta cutoffs during the last search that came from the first move tried. The closer it is
+     * to 1, the better the move ordering.
      *
-     * @param set char[]
-     * @return int
+     * @return double between 0 and 1
      */
-    private int countEmpty(char[] set) {
-        int count = 0;
-        for (char c : set) {
-            if (c == 'B') {
-                count++;
-            }
+    public double getFirstMoveCutoffRate() {
+        if (search == null) {
+            return 0;
+        }
+        long cutoffs = 0;
+        long first = 0;
+        for (MinimaxSearch s : searches()) {
+            cutoffs += s.getCutoffs();
+            first += s.getFirstMoveCutoffs();
         }
-        return count;
+        return cutoffs == 0 ? 0 : first / (double) cutoffs;
     }
 
     /**
-     * Returns the slot at the lowest empty position in a column. Null if there are none.
+     * Returns the score of the last move from the agent's point of view: the score of the deepest search that
+     * finished, or the book score for a book move. Scores beyond WIN_SCORE are forced wins and below -WIN_SCORE
+     * forced losses. It is not updated by solved moves, see getSolvedResult.
      *
-     * @param board  Connect4Game
-     * @param column Connect4Column
-     * @return column
+     * @return int
      */
-    private Connect4Slot getTopSlot(Connect4Game board, Connect4Column column) {
-        return getTopRow(board, column) >= 0 ? column.getSlot(getTopRow(board, column)) : null;
+    public int getScore() {
+        return score;
     }
 
     /**
-     * Returns an array containing the indices of rows that are not filled.
+     * Returns the proven result of the last move, such as "win in 7", if it was solved.
      *
-     * @param game Connect4Game
-     * @return int[]
+     * @return String, or null if the last move was searched
      */
-    private int[] getOpenColumns(Connect4Game game) {
-        ArrayList<Integer> countList = new ArrayList<>();
-        for (int c = 0; c < game.getColumnCount(); c++) {
-            if (!game.getColumn(c).getIsFull()) {
-                countList.add(c);
-            }
-        }
+    public String getSolvedResult() {
+        return solvedResult;
+    }
 
-        int[] openColumns = new int[countList.size()];
-        for (int i = 0; i < openColumns.length; i++) {
-            openColumns[i] = countList.get(i);
+    /**
+     * Returns the number of nodes visited during the last move.
+     *
+     * @return long
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the total score of the board, negative if it is in the opposing player's favor and positive if it is
+     * in the agent's favor. Every line of four on the board is scored as a group, and threats are scored by their
+     * row, see Evaluator. This scores the board from scratch; the searches keep an Evaluator up to date move by move
+     * instead.
+     *
+     * @param game  Connect4Bitboard
+     * @param depth int the remaining depth, added to win scores so quicker wins score higher
+     * @return score
+     */
+    public int evaluate(Connect4Bitboard game, int depth) { // basic heuristics
+        if (game.hasWon(iAmRed)) {
+            return WIN_SCORE + depth;
+        }
+        if (game.hasWon(!iAmRed)) {
+            return -WIN_SCORE - depth;
         }
+        // The player with more tokens moved first; with equal counts, fall back on the game.
+        int redCount = Long.bitCount(game.getRed());
+        int yellowCount = Long.bitCount(game.getYellow());
+        boolean redFirst = redCount != yellowCount ? redCount > yellowCount : myGame.getRedPlayedFirst();
+        int score = evaluation.evaluate(game, redFirst);
+        return iAmRed ? score : -score;
+    }
 
-        return openColumns;
+    /**
+     * Returns the same score as evaluate(game, depth), reading the heuristic part from an evaluator that has followed
+     * every move made on the board.
+     *
+     * @param game      Connect4Bitboard
+     * @param depth     int the remaining depth, added to win scores so quicker wins score higher
+     * @param evaluator Evaluator kept up to date with game
+     * @return score
+     */
+    public int evaluate(Connect4Bitboard game, int depth, Evaluator evaluator) {
+        if (game.hasWon(iAmRed)) {
+            return WIN_SCORE + depth;
+        }
+        if (game.hasWon(!iAmRed)) {
+            return -WIN_SCORE - depth;
+        }
+        int score = evaluator.getScore(game);
+        return iAmRed ? score : -score;
     }
 
     @Override
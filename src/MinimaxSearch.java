@@ -0,0 +1,783 @@
+/**
+ * The search state of one thread of a MiniConnorMaxAgent.
+ * Each MinimaxSearch owns its own bitboard, per-ply best moves and node counter, so several of them can search the
+ * same position on different threads. The transposition table is handed in by the agent.
+ * <p>
+ * Moves are tried in this order: the best column stored in the transposition table, then the two killer moves of the
+ * ply (the last columns that caused a cutoff at the same ply in a sibling node), then the other columns by their
+ * history score, which grows by depth squared every time a column causes a cutoff from the same slot. Columns with
+ * equal history keep the middle-out order. The killers and history can be turned off to fall back to the middle-out
+ * order alone. The root is the exception: it tries the best column of the previous search first and the others from
+ * the middle out, whatever the table, killers and history say, so that rootMoves can tell other threads the same
+ * order.
+ * <p>
+ * Before any of that, the winning slots of both players are read from the bitboard. An immediate win is returned
+ * without searching. With at least two plies left, a single opponent threat must be blocked, two threats are a loss,
+ * and a column whose next slot lies right under an opponent's winning slot is never tried, since each of those moves
+ * loses on the next ply. None of these change the score of the search, they only skip moves it would reject. When
+ * they pick a column, the winning or blocking one, it is the first one in the middle-out order.
+ * <p>
+ * Leaves are scored by an Evaluator that is updated on every move the search makes and takes back, so a leaf costs
+ * no more than the win checks.
+ */
+public class MinimaxSearch {
+
+    /**
+     * The search algorithms to choose from. Both give the same score at the same depth.
+     */
+    public enum Algorithm {
+        /** Minimax with alpha-beta pruning and a full window at every node. */
+        MINIMAX,
+        /** Principal variation search: negamax that searches the first move with the full window and the others with
+         * a zero window, searching again only when a move turns out better than the first. */
+        PVS,
+        /** MTD(f): a series of zero-window searches that close in on the score from a first guess, relying on the
+         * transposition table to make each pass cheap. */
+        MTDF
+    }
+
+    private static final int TIME_CHECK_INTERVAL = 1023; // The clock is read once every 1024 nodes.
+    private static final int INFINITY = Integer.MAX_VALUE; // Bounds the negamax window so negating it cannot overflow.
+    private static final int NO_SHORTCUT = Integer.MIN_VALUE; // Returned by threats() when the node must be searched.
+
+    private final MiniConnorMaxAgent agent; // Evaluates the leaves.
+    private final boolean iAmRed; // The player the scores are measured for.
+    private final int[] COLUMN_PRIORITY; // Prioritizes the middle columns so that there is more pruning.
+    private final Connect4Bitboard board; // The position being searched, changed and restored move by move.
+    private Evaluator evaluator; // Follows every move made on the board, so leaves are scored at once.
+    private final int[] bestMoves; // Best column found at each ply of the current search.
+    private final int[][] moveOrder; // Columns of each ply in the order they are tried.
+    private final int[][] killers; // Two killer columns per ply, -1 if none.
+    private final int[][] history; // Cutoff score of each slot, for the agent (0) and the opponent (1).
+    private boolean dynamicOrdering = true; // Use killers and history, not only the middle-out order.
+    private boolean threatShortcuts = true; // Take immediate wins and forced blocks without searching other moves.
+    private Algorithm algorithm = Algorithm.MINIMAX;
+    private int guess; // MTD(f)'s first guess: the score of the previous search.
+    private long passes; // MTD(f) zero-window passes since the last reset.
+    private long allowedSlots; // Slots left to search by the last call to threats(), read before recursing.
+    private TranspositionTable table; // Remembers positions that were already searched.
+    private long deadline = Long.MAX_VALUE; // System.nanoTime() after which the search gives up.
+    private boolean aborted; // Set once the deadline passes; every node then returns straight away.
+    private volatile boolean stopRequested; // Set by another thread to end the search early.
+    private int rootDepth; // Depth of the search in progress.
+    private int rootMove = -1; // Tried first at the root: the best column of the last search since the reset, or -1.
+    private long nodes; // Nodes visited since the last reset.
+    private long cutoffs; // Nodes that ended in a beta cutoff since the last reset.
+    private long firstMoveCutoffs; // Cutoffs caused by the first move tried.
+
+    /**
+     * Constructs a search for an agent.
+     *
+     * @param agent          MiniConnorMaxAgent
+     * @param iAmRed         boolean
+     * @param columnPriority int[] the order columns are tried in
+     * @param board          Connect4Bitboard the board this search owns
+     * @param table          TranspositionTable
+     */
+    public MinimaxSearch(MiniConnorMaxAgent agent, boolean iAmRed, int[] columnPriority, Connect4Bitboard board,
+                         TranspositionTable table) {
+        this.agent = agent;
+        this.iAmRed = iAmRed;
+        this.COLUMN_PRIORITY = columnPriority;
+        this.board = board;
+        this.table = table;
+        this.evaluator = new Evaluator(LineTable.forSize(board.getColumnCount(), board.getRowCount()),
+                agent.getWeights());
+        int cells = board.getColumnCount() * board.getRowCount();
+        this.bestMoves = new int[cells + 1];
+        this.moveOrder = new int[cells + 1][board.getColumnCount()];
+        this.killers = new int[cells + 1][2];
+        this.history = new int[2][board.getColumnCount() * board.getStride()];
+    }
+
+    /**
+     * Gets ready for a new move: counters are reset and the search stops at the given time.
+     *
+     * @param deadline long a System.nanoTime() value, or Long.MAX_VALUE for no limit
+     */
+    public void reset(long deadline) {
+        this.deadline = deadline;
+        nodes = 0;
+        cutoffs = 0;
+        firstMoveCutoffs = 0;
+        passes = 0;
+        rootMove = -1;
+        aborted = false;
+        stopRequested = false;
+        for (int[] pair : killers) {
+            pair[0] = -1;
+            pair[1] = -1;
+        }
+        // The last move's history is still a fair guess, but should not outweigh what this move finds.
+        for (int[] side : history) {
+            for (int i = 0; i < side.length; i++) {
+                side[i] >>= 1;
+            }
+        }
+    }
+
+    /**
+     * Turns the immediate win and forced block shortcuts on or off.
+     *
+     * @param threatShortcuts boolean false to search every column
+     */
+    public void setThreatShortcuts(boolean threatShortcuts) {
+        this.threatShortcuts = threatShortcuts;
+    }
+
+    /**
+     * Chooses the search algorithm.
+     *
+     * @param algorithm Algorithm
+     */
+    public void setAlgorithm(Algorithm algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * Turns the killer move and history ordering on or off.
+     *
+     * @param dynamicOrdering boolean false to only use the table move and the middle-out order
+     */
+    public void setDynamicOrdering(boolean dynamicOrdering) {
+        this.dynamicOrdering = dynamicOrdering;
+    }
+
+    /**
+     * Sets the weights of the evaluation used from the next search on.
+     *
+     * @param weights EvaluationWeights
+     */
+    public void setWeights(EvaluationWeights weights) {
+        evaluator = new Evaluator(LineTable.forSize(board.getColumnCount(), board.getRowCount()), weights);
+    }
+
+    /**
+     * Asks the search to give up from another thread. It notices within the next 1024 nodes.
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    /**
+     * Searches the board to the given depth with the agent to move.
+     *
+     * @param depth int
+     * @return the score of the position
+     */
+    public int search(int depth) {
+        rootDepth = depth;
+        evaluator.reset(board, (board.getMoveCount() % 2 == 0) == iAmRed); // The agent is to move.
+        int score;
+        if (algorithm == Algorithm.PVS) {
+            score = pvs(board, depth, true, -INFINITY, INFINITY);
+        } else if (algorithm == Algorithm.MTDF) {
+            score = mtdf(depth);
+        } else {
+            score = minimax(board, depth, true, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        }
+        if (!aborted) {
+            rootMove = bestMoves[0];
+        }
+        return score;
+    }
+
+    /**
+     * Lists the agent's moves at the root in the order search(depth) tries them: firstMove, then the other columns
+     * from the middle out, leaving out the columns the threat shortcuts skip. If the shortcuts already decide the
+     * root, because the agent can win at once or cannot stop the opponent from winning, no move is listed and
+     * search(depth) returns straight away.
+     *
+     * @param depth     int
+     * @param firstMove int the column to try first, or -1
+     * @param order     int[] filled with the columns, at least as long as the number of columns
+     * @return the number of columns listed
+     */
+    public int rootMoves(int depth, int firstMove, int[] order) {
+        rootDepth = depth;
+        long allowed = -1L;
+        if (threatShortcuts) {
+            if (threats(board, depth, 0, true) != NO_SHORTCUT) {
+                return 0;
+            }
+            allowed = allowedSlots;
+        }
+        int count = orderMoves(board, 0, 0, firstMove, allowed);
+        System.arraycopy(moveOrder[0], 0, order, 0, count);
+        return count;
+    }
+
+    /**
+     * Searches a single move of the agent, as the root would with the given alpha. A score above alpha is exact; a
+     * score at or below alpha only shows the move is no better than alpha. This is the unit of work when the root
+     * moves are split between threads. MTD(f) uses PVS here, since a single move has no previous score to guess from.
+     *
+     * @param col   int
+     * @param depth int the depth of the root, including this move
+     * @param alpha int the score the move has to beat, or Integer.MIN_VALUE for an exact score
+     * @return the score of the move
+     */
+    public int searchMove(int col, int depth, int alpha) {
+        rootDepth = depth;
+        evaluator.reset(board, (board.getMoveCount() % 2 == 0) == iAmRed); // The agent is to move.
+        play(board, col, iAmRed);
+        int score;
+        if (algorithm == Algorithm.MINIMAX) {
+            score = minimax(board, depth - 1, false, alpha, Integer.MAX_VALUE);
+        } else {
+            score = -pvs(board, depth - 1, false, -INFINITY, -Math.max(alpha, -INFINITY));
+        }
+        undo(board, col, iAmRed);
+        return score;
+    }
+
+    /**
+     * @return the best column of the last call to search, or -1 if none finished.
+     */
+    public int getBestMove() {
+        return bestMoves[0];
+    }
+
+    /**
+     * @return the board this search owns.
+     */
+    public Connect4Bitboard getBoard() {
+        return board;
+    }
+
+    /**
+     * @return the transposition table.
+     */
+    public TranspositionTable getTable() {
+        return table;
+    }
+
+    /**
+     * @param table TranspositionTable the table to use from now on
+     */
+    public void setTable(TranspositionTable table) {
+        this.table = table;
+    }
+
+    /**
+     * @return true if the deadline passed or a stop was asked for during the search.
+     */
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * @return the number of nodes visited since the last reset.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return the number of MTD(f) zero-window passes since the last reset.
+     */
+    public long getPasses() {
+        return passes;
+    }
+
+    /**
+     * @return the number of beta cutoffs since the last reset.
+     */
+    public long getCutoffs() {
+        return cutoffs;
+    }
+
+    /**
+     * @return the number of beta cutoffs caused by the first move tried, since the last reset.
+     */
+    public long getFirstMoveCutoffs() {
+        return firstMoveCutoffs;
+    }
+
+    /**
+     * Minimax algorithm
+     * Minimizes the possible loss for the worst case. Gains are referred to as "maximum" and losses are referred to as
+     * "minimum". Maximum value returns the highest value that the player can be sure to get without knowing the
+     * actions of the other player. Lowest value returns the lowest value that the opposing player can be sure to get
+     * without knowing the actions of the other player.
+     * Alpha-beta pruning is implemented to shorten the length of the binary tree.
+     *
+     * @param game         Connect4Bitboard
+     * @param depth        int
+     * @param isMaximizing boolean
+     * @param alpha        int
+     * @param beta         int
+     * @return score, with the best column left in bestMoves[rootDepth - depth]
+     */
+    private int minimax(Connect4Bitboard game, int depth, boolean isMaximizing, int alpha, int beta) {
+        // Give up once the time is spent or another thread asks. Callers throw the result away.
+        if ((++nodes & TIME_CHECK_INTERVAL) == 0 && (stopRequested || System.nanoTime() > deadline)) {
+            aborted = true;
+        }
+        if (aborted) {
+            return 0;
+        }
+        // Check for a leaf node. Only the player who just moved can have completed a line.
+        if (depth <= 0 || game.isFull() || game.hasWon(isMaximizing != iAmRed)) {
+            return agent.evaluate(game, depth, evaluator);
+        }
+        int ply = rootDepth - depth;
+        bestMoves[ply] = -1;
+
+        // Wins and forced blocks can be seen straight from the winning slots.
+        long allowed = -1L; // Slots of the columns worth searching.
+        if (threatShortcuts) {
+            int threatScore = threats(game, depth, ply, isMaximizing);
+            if (threatScore != NO_SHORTCUT) {
+                return threatScore;
+            }
+            allowed = allowedSlots;
+        }
+
+        // Positions already searched at least as deep can be answered from the table, except at the root where
+        // the best column is needed.
+        long key = game.getKey();
+        long entry = table.probe(key);
+        int ttMove = -1;
+        if (entry != 0) {
+            ttMove = TranspositionTable.move(entry);
+            if (ply > 0 && TranspositionTable.depth(entry) >= depth) {
+                int ttScore = fromTable(TranspositionTable.score(entry), depth);
+                int flag = TranspositionTable.flag(entry);
+                if (flag == TranspositionTable.EXACT) {
+                    bestMoves[ply] = ttMove;
+                    return ttScore;
+                } else if (flag == TranspositionTable.LOWER) {
+                    alpha = Math.max(alpha, ttScore);
+                } else {
+                    beta = Math.min(beta, ttScore);
+                }
+                if (beta <= alpha) {
+                    bestMoves[ply] = ttMove;
+                    return ttScore;
+                }
+            }
+        }
+        if (ply == 0) {
+            ttMove = rootMove;
+        }
+        int alphaOrig = alpha;
+        int betaOrig = beta;
+
+        int side = isMaximizing ? 0 : 1;
+        int count = orderMoves(game, ply, side, ttMove, allowed);
+        int[] order = moveOrder[ply];
+
+        // Returns the largest value that the minimizing player chose.
+        // Prunes any branches that obviously do not benefit the minimizing player.
+        int bestCol = -1;
+        int bestScore;
+        if (isMaximizing) {
+            int highestScore = Integer.MIN_VALUE;
+            for (int i = 0; i < count; i++) {
+                int col = order[i];
+                play(game, col, iAmRed);
+                int score = minimax(game, depth - 1, false, alpha, beta);
+                undo(game, col, iAmRed);
+                if (aborted) {
+                    break;
+                }
+                alpha = Math.max(score, alpha);
+                if (score > highestScore) {
+                    bestCol = col;
+                    highestScore = score;
+                }
+                if (beta <= alpha) {
+                    recordCutoff(game, ply, side, col, i, depth);
+                    break;
+                }
+            }
+            bestScore = highestScore;
+        }
+        // Returns the smallest value that the maximizing player chose.
+        // Prunes any branches that obviously do not benefit the maximizing player.
+        else {
+            int lowestScore = Integer.MAX_VALUE;
+            for (int i = 0; i < count; i++) {
+                int col = order[i];
+                play(game, col, !iAmRed);
+                int score = minimax(game, depth - 1, true, alpha, beta);
+                undo(game, col, !iAmRed);
+                if (aborted) {
+                    break;
+                }
+                beta = Math.min(score, beta);
+                if (score < lowestScore) {
+                    bestCol = col;
+                    lowestScore = score;
+                }
+                if (beta <= alpha) {
+                    recordCutoff(game, ply, side, col, i, depth);
+                    break;
+                }
+            }
+            bestScore = lowestScore;
+        }
+        bestMoves[ply] = bestCol;
+        if (aborted) { // Only the columns that finished are counted, and nothing is stored.
+            return bestScore;
+        }
+        int flag = bestScore <= alphaOrig ? TranspositionTable.UPPER
+                : bestScore >= betaOrig ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+        table.store(key, depth, flag, toTable(bestScore, depth), bestCol);
+        return bestScore;
+    }
+
+    /**
+     * MTD(f). Each pass is a zero-window search that tells whether the score is above or below a bound, and moves
+     * the lower or upper bound to the score it returns. The first bound is the score of the previous search, so
+     * during iterative deepening only a few passes are needed. The best column is taken from the pass that raised
+     * the lower bound to the final score, since a pass that fails low does not prove any move best. If time runs out
+     * first, no column is returned.
+     *
+     * @param depth int
+     * @return the score of the position
+     */
+    private int mtdf(int depth) {
+        int lower = -INFINITY;
+        int upper = INFINITY;
+        int score = guess;
+        int bestMove = -1;
+        while (lower < upper) {
+            int beta = score == lower ? score + 1 : score;
+            score = pvs(board, depth, true, beta - 1, beta);
+            passes++;
+            if (aborted) {
+                break;
+            }
+            if (score < beta) {
+                upper = score;
+            } else {
+                lower = score;
+                bestMove = bestMoves[0];
+            }
+        }
+        // An unfinished series only bounds the score, so the previous depth's column is safer.
+        bestMoves[0] = aborted ? -1 : bestMove;
+        if (!aborted) {
+            guess = score;
+        }
+        return score;
+    }
+
+    /**
+     * Principal variation search, in negamax form: scores are from the point of view of the side to move, and are
+     * stored in the transposition table that way too. The first move is searched with the full window. Every other
+     * move only has to be shown to be no better, which a zero window around alpha does cheaply; a move that fails
+     * high is searched again with the full window to get its score. With good move ordering the first move is
+     * usually best and most re-searches are avoided.
+     *
+     * @param game         Connect4Bitboard
+     * @param depth        int
+     * @param isMaximizing boolean true if the agent is to move
+     * @param alpha        int
+     * @param beta         int
+     * @return score for the side to move, with the best column left in bestMoves[rootDepth - depth]
+     */
+    private int pvs(Connect4Bitboard game, int depth, boolean isMaximizing, int alpha, int beta) {
+        if ((++nodes & TIME_CHECK_INTERVAL) == 0 && (stopRequested || System.nanoTime() > deadline)) {
+            aborted = true;
+        }
+        if (aborted) {
+            return 0;
+        }
+        int sign = isMaximizing ? 1 : -1;
+        if (depth <= 0 || game.isFull() || game.hasWon(isMaximizing != iAmRed)) {
+            return sign * agent.evaluate(game, depth, evaluator);
+        }
+        int ply = rootDepth - depth;
+        bestMoves[ply] = -1;
+
+        long allowed = -1L;
+        if (threatShortcuts) {
+            int threatScore = threats(game, depth, ply, isMaximizing);
+            if (threatScore != NO_SHORTCUT) {
+                return sign * threatScore;
+            }
+            allowed = allowedSlots;
+        }
+
+        long key = game.getKey();
+        long entry = table.probe(key);
+        int ttMove = -1;
+        if (entry != 0) {
+            ttMove = TranspositionTable.move(entry);
+            if (ply > 0 && TranspositionTable.depth(entry) >= depth) {
+                int ttScore = fromTable(TranspositionTable.score(entry), depth);
+                int flag = TranspositionTable.flag(entry);
+                if (flag == TranspositionTable.EXACT) {
+                    bestMoves[ply] = ttMove;
+                    return ttScore;
+                } else if (flag == TranspositionTable.LOWER) {
+                    alpha = Math.max(alpha, ttScore);
+                } else {
+                    beta = Math.min(beta, ttScore);
+                }
+                if (alpha >= beta) {
+                    bestMoves[ply] = ttMove;
+                    return ttScore;
+                }
+            }
+        }
+        if (ply == 0) {
+            ttMove = rootMove;
+        }
+        int alphaOrig = alpha;
+
+        int side = isMaximizing ? 0 : 1;
+        int count = orderMoves(game, ply, side, ttMove, allowed);
+        int[] order = moveOrder[ply];
+        boolean redToMove = isMaximizing == iAmRed;
+        int bestCol = -1;
+        int bestScore = -INFINITY;
+        for (int i = 0; i < count; i++) {
+            int col = order[i];
+            play(game, col, redToMove);
+            int score;
+            if (i == 0) {
+                score = -pvs(game, depth - 1, !isMaximizing, -beta, -alpha);
+            } else {
+                score = -pvs(game, depth - 1, !isMaximizing, -alpha - 1, -alpha);
+                if (score > alpha && score < beta && !aborted) {
+                    score = -pvs(game, depth - 1, !isMaximizing, -beta, -alpha);
+                }
+            }
+            undo(game, col, redToMove);
+            if (aborted) {
+                break;
+            }
+            if (score > bestScore) {
+                bestCol = col;
+                bestScore = score;
+            }
+            alpha = Math.max(alpha, score);
+            if (alpha >= beta) {
+                recordCutoff(game, ply, side, col, i, depth);
+                break;
+            }
+        }
+        bestMoves[ply] = bestCol;
+        if (aborted) {
+            return bestScore;
+        }
+        int flag = bestScore <= alphaOrig ? TranspositionTable.UPPER
+                : bestScore >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+        table.store(key, depth, flag, toTable(bestScore, depth), bestCol);
+        return bestScore;
+    }
+
+    /**
+     * Reads the winning slots of both players. Returns the score straight away if the side to move wins now or
+     * cannot stop the opponent from winning next, otherwise leaves the slots worth playing in allowedSlots.
+     *
+     * @param game         Connect4Bitboard
+     * @param depth        int
+     * @param ply          int
+     * @param isMaximizing boolean
+     * @return the score from the agent's point of view, or NO_SHORTCUT
+     */
+    private int threats(Connect4Bitboard game, int depth, int ply, boolean isMaximizing) {
+        boolean redToMove = isMaximizing == iAmRed;
+        long playable = game.getPlayableMask();
+        allowedSlots = -1L;
+        long wins = game.getWinningSlots(redToMove) & playable;
+        if (wins != 0) { // The same score the leaf gives after the winning move.
+            bestMoves[ply] = firstColumn(wins, game.getStride());
+            int win = MiniConnorMaxAgent.WIN_SCORE + depth - 1;
+            return isMaximizing ? win : -win;
+        }
+        if (depth >= 2) {
+            long threats = game.getWinningSlots(!redToMove);
+            long forced = threats & playable;
+            long allowed = playable & ~(threats >>> 1);
+            if (forced != 0) {
+                allowed = (forced & (forced - 1)) != 0 ? 0 : allowed & forced;
+            }
+            if (allowed == 0) { // Every move lets the opponent win straight away.
+                bestMoves[ply] = firstColumn(forced != 0 ? forced : playable, game.getStride());
+                int loss = MiniConnorMaxAgent.WIN_SCORE + depth - 2;
+                return isMaximizing ? -loss : loss;
+            }
+            allowedSlots = allowed;
+        }
+        return NO_SHORTCUT;
+    }
+
+    /**
+     * Finds the first column in the middle-out order that holds one of a set of slots, so a column picked by the
+     * shortcuts is the one the search would have tried first.
+     *
+     * @param slots  long not 0
+     * @param stride int the bits per column
+     * @return int
+     */
+    private int firstColumn(long slots, int stride) {
+        long column = (1L << stride) - 1;
+        for (int col : COLUMN_PRIORITY) {
+            if ((slots >>> (col * stride) & column) != 0) {
+                return col;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Fills moveOrder[ply] with the playable columns in the order they should be tried.
+     *
+     * @param game    Connect4Bitboard
+     * @param ply     int
+     * @param side    int 0 for the agent, 1 for the opponent
+     * @param ttMove  int the column from the transposition table, or at the root the column to try first, or -1
+     * @param allowed long the slots that may be played, or -1 for every slot
+     * @return the number of columns
+     */
+    private int orderMoves(Connect4Bitboard game, int ply, int side, int ttMove, long allowed) {
+        int[] order = moveOrder[ply];
+        int count = 0;
+        if (ttMove >= 0 && canPlay(game, ttMove, allowed)) {
+            order[count++] = ttMove;
+        }
+        if (!dynamicOrdering || ply == 0) {
+            for (int col : COLUMN_PRIORITY) {
+                if (col != ttMove && canPlay(game, col, allowed)) {
+                    order[count++] = col;
+                }
+            }
+            return count;
+        }
+        for (int killer : killers[ply]) {
+            if (killer >= 0 && canPlay(game, killer, allowed) && !contains(order, count, killer)) {
+                order[count++] = killer;
+            }
+        }
+        int sorted = count;
+        int stride = game.getStride();
+        for (int col : COLUMN_PRIORITY) {
+            if (!canPlay(game, col, allowed) || contains(order, sorted, col)) {
+                continue;
+            }
+            // Insertion sort by history, after any column with the same score so ties stay middle-out.
+            int score = history[side][col * stride + game.getHeight(col)];
+            int i = count++;
+            for (; i > sorted && history[side][order[i - 1] * stride + game.getHeight(order[i - 1])] < score; i--) {
+                order[i] = order[i - 1];
+            }
+            order[i] = col;
+        }
+        return count;
+    }
+
+    /**
+     * @param game    Connect4Bitboard
+     * @param col     int
+     * @param allowed long the slots that may be played, or -1 for every slot
+     * @return true if the column is open and its next slot is allowed.
+     */
+    private static boolean canPlay(Connect4Bitboard game, int col, long allowed) {
+        return game.canPlay(col) && (allowed & (1L << (col * game.getStride() + game.getHeight(col)))) != 0;
+    }
+
+    /**
+     * @param order int[]
+     * @param count int the number of columns in order to look at
+     * @param col   int
+     * @return true if col is among the first count columns of order.
+     */
+    private static boolean contains(int[] order, int count, int col) {
+        for (int i = 0; i < count; i++) {
+            if (order[i] == col) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Remembers a column that caused a beta cutoff: it becomes the first killer of the ply and its slot's history
+     * grows.
+     *
+     * @param game  Connect4Bitboard
+     * @param ply   int
+     * @param side  int 0 for the agent, 1 for the opponent
+     * @param col   int
+     * @param index int the position of the column in the move order
+     * @param depth int
+     */
+    private void recordCutoff(Connect4Bitboard game, int ply, int side, int col, int index, int depth) {
+        cutoffs++;
+        if (index == 0) {
+            firstMoveCutoffs++;
+        }
+        if (!dynamicOrdering) {
+            return;
+        }
+        int[] pair = killers[ply];
+        if (pair[0] != col) {
+            pair[1] = pair[0];
+            pair[0] = col;
+        }
+        history[side][col * game.getStride() + game.getHeight(col)] += depth * depth;
+    }
+
+    /**
+     * Makes a move on the board and in the evaluator.
+     *
+     * @param game Connect4Bitboard the search's board
+     * @param col  int
+     * @param red  boolean
+     */
+    private void play(Connect4Bitboard game, int col, boolean red) {
+        evaluator.play(col * game.getStride() + game.getHeight(col), red);
+        game.makeMove(col, red);
+    }
+
+    /**
+     * Takes a move back from the board and the evaluator.
+     *
+     * @param game Connect4Bitboard the search's board
+     * @param col  int
+     * @param red  boolean the player who made the move
+     */
+    private void undo(Connect4Bitboard game, int col, boolean red) {
+        game.undoMove(col);
+        evaluator.undo(col * game.getStride() + game.getHeight(col), red);
+    }
+
+    /**
+     * Converts a score so it can be stored in the transposition table. Win and loss scores count the remaining depth
+     * from the root, so they are stored relative to the current node instead and work for any root.
+     *
+     * @param score int
+     * @param depth int
+     * @return int
+     */
+    private int toTable(int score, int depth) {
+        if (score > MiniConnorMaxAgent.WIN_SCORE / 2) {
+            return score - depth;
+        } else if (score < -MiniConnorMaxAgent.WIN_SCORE / 2) {
+            return score + depth;
+        }
+        return score;
+    }
+
+    /**
+     * Converts a score read from the transposition table back to the scale of the current search.
+     *
+     * @param score int
+     * @param depth int
+     * @return int
+     */
+    private int fromTable(int score, int depth) {
+        if (score > MiniConnorMaxAgent.WIN_SCORE / 2) {
+            return score + depth;
+        } else if (score < -MiniConnorMaxAgent.WIN_SCORE / 2) {
+            return score - depth;
+        }
+        return score;
+    }
+}
@@ -0,0 +1,260 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * An agent that picks its moves with Monte Carlo tree search instead of minimax.
+ * Each move grows a MonteCarloTree from the current position until the time or playout budget is spent, then plays
+ * the most visited column. No evaluation function is needed: positions are judged by how random games from them end.
+ * <p>
+ * With more than one thread the search is root parallel: every thread grows its own tree from the same position with
+ * its own random playouts, and the visits of the root columns are added up at the end. The threads never touch each
+ * other's memory, so the playout rate scales with the cores, and the merged visits are a steadier vote than a single
+ * tree of the same total size.
+ * <p>
+ * The tree is kept between moves: the next move starts from the subtree under the opponent's actual reply, so the
+ * playouts spent on that reply last turn are not lost.
+ * <p>
+ * The tree and the playouts run on Connect4Bitboard, so the agent only plays boards that fit in one; see
+ * Connect4Bitboard.fits. The constructors refuse larger boards, and MiniConnorMaxAgent can play those instead.
+ */
+public class MonteCarloAgent extends Agent {
+
+    private static final int DEFAULT_PLAYOUTS = 20000; // Playouts per move unless told otherwise.
+    private static final int DEFAULT_TREE_NODES = 1 << 19; // Nodes in the pool unless told otherwise.
+    private static final int TIME_CHECK_INTERVAL = 255; // The clock is read once every 256 playouts.
+
+    private final long MOVE_MILLIS; // Time budget for each move, or 0 for no time limit.
+    private final int MAX_PLAYOUTS; // Playout budget for each move, or 0 for no playout limit.
+    private final int[] COLUMN_PRIORITY; // The middle columns first, to break ties between columns.
+    private int treeNodes = DEFAULT_TREE_NODES;
+    private long seed = System.nanoTime();
+    private MonteCarloTree[] trees; // One per thread, built on first use.
+    private ForkJoinPool pool; // Runs the trees, or null when searching on one thread.
+    private int parallelism = 1; // Number of threads, each with its own tree.
+    private double confidence; // Share of the merged root visits that went to the column played.
+    private double value; // Expected score of the column played, averaged over the trees.
+    private boolean verbose; // Prints search statistics after every move.
+    private boolean reuseTree = true; // Keeps the subtree of the position reached from one move to the next.
+    private long playouts; // Playouts during the last move.
+    private long moveNanos; // Time taken by the last move.
+
+    /**
+     * Constructs an agent that runs a fixed number of playouts per move.
+     *
+     * @param game   Connect4Game
+     * @param iAmRed boolean
+     */
+    public MonteCarloAgent(Connect4Game game, boolean iAmRed) {
+        this(game, iAmRed, 0, DEFAULT_PLAYOUTS);
+    }
+
+    /**
+     * Constructs an agent with a time budget, a playout budget, or both. The move ends as soon as either runs out.
+     *
+     * @param game        Connect4Game
+     * @param iAmRed      boolean
+     * @param moveMillis  long milliseconds per move, or 0 for no time limit
+     * @param maxPlayouts int playouts per move, or 0 for no playout limit
+     * @throws IllegalArgumentException if there is no budget, or the board does not fit in a bitboard
+     */
+    public MonteCarloAgent(Connect4Game game, boolean iAmRed, long moveMillis, int maxPlayouts) {
+        super(game, iAmRed);
+        if (!game.hasBitboard()) {
+            throw new IllegalArgumentException("The Monte Carlo agent cannot play a " + game.getColumnCount() + "x"
+                    + game.getRowCount() + " board, which does not fit in a bitboard");
+        }
+        if (moveMillis < 0 || maxPlayouts < 0 || (moveMillis == 0 && maxPlayouts == 0)) {
+            throw new IllegalArgumentException("Need a time or playout budget, got " + moveMillis + " ms and "
+                    + maxPlayouts + " playouts");
+        }
+        MOVE_MILLIS = moveMillis;
+        MAX_PLAYOUTS = maxPlayouts;
+        int colCnt = myGame.getColumnCount();
+        COLUMN_PRIORITY = new int[colCnt];
+        for (int i = 0; i < colCnt; i++) {
+            COLUMN_PRIORITY[i] = (colCnt / 2 + ((i % 2 == 0) ? i / 2 : colCnt - (i + 1) / 2)) % colCnt;
+        }
+    }
+
+    /**
+     * Sets how many nodes the tree may hold. Once it is full the playouts carry on from its leaves.
+     *
+     * @param nodes int
+     */
+    public void setTreeSize(int nodes) {
+        treeNodes = nodes;
+        trees = null;
+    }
+
+    /**
+     * Seeds the random playouts, so a game can be repeated.
+     *
+     * @param seed long
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+        trees = null;
+    }
+
+    /**
+     * Sets how many threads search each move. Each thread grows its own tree of the full size. A playout budget is
+     * shared out between the threads, so a move costs the same number of playouts whatever the parallelism.
+     *
+     * @param threads int
+     */
+    public void setParallelism(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1, got " + threads);
+        }
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        parallelism = threads;
+        trees = null;
+        if (threads > 1) {
+            pool = new ForkJoinPool(threads);
+        }
+    }
+
+    /**
+     * Keeps the subtree under the position reached from one move to the next, or starts every move from an empty
+     * tree. On by default.
+     *
+     * @param reuseTree boolean false to start every move from an empty tree
+     */
+    public void setTreeReuse(boolean reuseTree) {
+        this.reuseTree = reuseTree;
+    }
+
+    /**
+     * Turns printing of search statistics after every move on or off.
+     *
+     * @param verbose boolean
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Grows the tree from the current position until the budget is spent and plays the most visited column. Columns
+     * with as many visits are played from the middle out.
+     */
+    public void move() {
+        long start = System.nanoTime();
+        long deadline = MOVE_MILLIS == 0 ? Long.MAX_VALUE : start + MOVE_MILLIS * 1000000;
+        Connect4Bitboard position = myGame.getBitboard();
+        if (trees == null) {
+            trees = new MonteCarloTree[parallelism];
+            for (int i = 0; i < parallelism; i++) {
+                trees[i] = new MonteCarloTree(position, treeNodes, seed + i * 0x9E3779B97F4A7C15L);
+            }
+        }
+        long budget = MAX_PLAYOUTS == 0 ? Long.MAX_VALUE : Math.max(1, MAX_PLAYOUTS / parallelism);
+        if (parallelism == 1) {
+            grow(trees[0], position, deadline, budget);
+        } else {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (MonteCarloTree tree : trees) {
+                tasks.add(() -> {
+                    grow(tree, position, deadline, budget);
+                    return null;
+                });
+            }
+            pool.invokeAll(tasks);
+        }
+
+        int[] visits = new int[position.getColumnCount()];
+        playouts = 0;
+        value = 0;
+        for (MonteCarloTree tree : trees) {
+            tree.addRootVisits(visits);
+            playouts += tree.getPlayouts();
+        }
+        // The most visited open column, the middle one first on a tie, so a root with no visits at all still gets
+        // a column that can be played.
+        int bestColumn = -1;
+        long total = 0;
+        for (int col : COLUMN_PRIORITY) {
+            total += visits[col];
+            if (position.canPlay(col) && (bestColumn < 0 || visits[col] > visits[bestColumn])) {
+                bestColumn = col;
+            }
+        }
+        for (MonteCarloTree tree : trees) {
+            value += tree.getValue(bestColumn) * tree.getPlayouts() / Math.max(1, playouts);
+        }
+        confidence = total == 0 ? 0 : visits[bestColumn] / (double) total;
+        myGame.makeMove(bestColumn, iAmRed);
+        moveNanos = System.nanoTime() - start;
+        if (verbose) {
+            System.out.println(report());
+        }
+    }
+
+    /**
+     * Grows one tree from the position until the time or its share of the playouts runs out.
+     *
+     * @param tree     MonteCarloTree
+     * @param position Connect4Bitboard
+     * @param deadline long a System.nanoTime() value, or Long.MAX_VALUE for no limit
+     * @param budget   long playouts for this tree
+     */
+    private void grow(MonteCarloTree tree, Connect4Bitboard position, long deadline, long budget) {
+        if (!reuseTree || !tree.advance(position, iAmRed)) {
+            tree.reset(position, iAmRed);
+        }
+        for (long i = 0; i < budget; i++) {
+            tree.iterate();
+            if ((i & TIME_CHECK_INTERVAL) == TIME_CHECK_INTERVAL && System.nanoTime() > deadline) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of playouts run during the last move.
+     *
+     * @return long
+     */
+    public long getPlayouts() {
+        return playouts;
+    }
+
+    /**
+     * Returns the playouts per second reached during the last move by all threads together.
+     *
+     * @return long
+     */
+    public long getPlayoutsPerSecond() {
+        return playouts * 1000000000L / Math.max(1, moveNanos);
+    }
+
+    /**
+     * Returns the time taken by the last move in nanoseconds.
+     *
+     * @return long
+     */
+    public long getMoveNanos() {
+        return moveNanos;
+    }
+
+    /**
+     * Describes the last move's search: playouts, speed, size of the first tree and how sure the agent is of its
+     * move.
+     *
+     * @return String
+     */
+    public String report() {
+        return String.format("%s: %d playouts in %d ms (%d per second), %d nodes, best move %.0f%% of visits, "
+                        + "expected score %.2f", this, playouts, moveNanos / 1000000, getPlayoutsPerSecond(),
+                trees[0].size(), confidence * 100, value);
+    }
+
+    @Override
+    public String getName() {
+        return "Monte Carlo";
+    }
+}
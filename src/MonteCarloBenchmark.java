@@ -0,0 +1,50 @@
+/**
+ * Measures how MonteCarloAgent's root parallel search scales. Each position of SearchBenchmark's opening suite is
+ * searched for a fixed time on a 7x6 board with 1, 2, 4 and so on up to the given number of threads, and the
+ * playouts per second and speedup over one thread are printed.
+ * <p>
+ * Usage: java MonteCarloBenchmark [milliseconds per position] [threads]
+ */
+public class MonteCarloBenchmark {
+
+    public static void main(String[] args) {
+        long millis = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        System.out.printf("%-8s %14s %8s%n", "Threads", "Playouts/s", "Speedup");
+        long single = 0;
+        for (int t = 1; ; t = Math.min(t * 2, threads)) {
+            long rate = run(millis, t);
+            if (t == 1) {
+                single = rate;
+            }
+            System.out.printf("%-8d %14d %7.2fx%n", t, rate, rate / (double) Math.max(1, single));
+            if (t == threads) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Searches every position of the suite for a fixed time.
+     *
+     * @param millis  long milliseconds per position
+     * @param threads int
+     * @return the playouts per second over the whole suite
+     */
+    private static long run(long millis, int threads) {
+        long playouts = 0;
+        long nanos = 0;
+        for (String moves : SearchBenchmark.POSITIONS) {
+            Connect4Game game = SearchBenchmark.position(moves);
+            MonteCarloAgent agent = new MonteCarloAgent(game, moves.length() % 2 == 0, millis, 0);
+            agent.setSeed(moves.hashCode());
+            agent.setParallelism(threads);
+            agent.move();
+            agent.setParallelism(1); // Shuts the thread pool down.
+            playouts += agent.getPlayouts();
+            nanos += agent.getMoveNanos();
+        }
+        return playouts * 1000000000L / Math.max(1, nanos);
+    }
+}
@@ -0,0 +1,353 @@
+/**
+ * The search tree of one thread of a MonteCarloAgent.
+ * <p>
+ * Every iteration walks down the tree picking children with the UCT formula, adds the children of the node it stops
+ * at, plays the game out to the end from there and adds the result to every node on the way back up. Nodes live in a
+ * pool of flat primitive arrays indexed by node number, and the children of a node are always next to each other, so
+ * the tree costs no objects and is thrown away by resetting a counter. When the pool is full the tree stops growing
+ * and the playouts carry on from its leaves.
+ * <p>
+ * Between moves the tree can be moved down to the position actually reached, keeping the statistics of the subtree
+ * under the moves that were played. The subtree is copied to the front of the pool and the rest is freed.
+ * <p>
+ * Playouts are random but not blind: a player takes an immediate win and blocks an immediate threat, which is cheap
+ * with the bitboard's winning slots and makes the results much less noisy.
+ */
+public class MonteCarloTree {
+
+    private static final double EXPLORATION = Math.sqrt(2); // The UCT exploration constant.
+    private static final byte OPEN = 0; // The game goes on after the move into this node.
+    private static final byte WON = 1; // The move into this node won the game.
+    private static final byte DRAWN = 2; // The move into this node filled the board.
+
+    private final Connect4Bitboard root; // The position at the root.
+    private final Connect4Bitboard board; // Replays the path of each iteration from the root.
+    private final int cells;
+    private final int stride;
+    private final int[] firstChild; // Node number of the first child, or 0 if not expanded.
+    private final byte[] childCount;
+    private final byte[] column; // The column played to reach the node.
+    private final byte[] state; // OPEN, WON or DRAWN.
+    private final int[] visits;
+    private final double[] wins; // Total result for the player who moved into the node, a draw counting half.
+    private final int[] path; // Nodes visited by the current iteration.
+    private int size; // Nodes in use.
+    private boolean rootIsRed; // The side to move at the root.
+    private long random; // State of the xorshift generator.
+    private long playouts;
+
+    /**
+     * Constructs a tree with room for a fixed number of nodes.
+     *
+     * @param board    Connect4Bitboard a board of the size to search
+     * @param capacity int the number of nodes in the pool
+     * @param seed     long seeds the playouts
+     */
+    public MonteCarloTree(Connect4Bitboard board, int capacity, long seed) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The tree needs room for at least one node, got " + capacity);
+        }
+        this.root = new Connect4Bitboard(board);
+        this.board = new Connect4Bitboard(board);
+        this.cells = board.getColumnCount() * board.getRowCount();
+        this.stride = board.getStride();
+        firstChild = new int[capacity];
+        childCount = new byte[capacity];
+        column = new byte[capacity];
+        state = new byte[capacity];
+        visits = new int[capacity];
+        wins = new double[capacity];
+        path = new int[cells + 1];
+        random = seed == 0 ? 0x9E3779B97F4A7C15L : seed;
+    }
+
+    /**
+     * Empties the tree and starts a new search from a position.
+     *
+     * @param position Connect4Bitboard
+     * @param redToMove boolean
+     */
+    public void reset(Connect4Bitboard position, boolean redToMove) {
+        root.copyFrom(position);
+        rootIsRed = redToMove;
+        size = 1;
+        firstChild[0] = 0;
+        childCount[0] = 0;
+        state[0] = OPEN;
+        visits[0] = 0;
+        wins[0] = 0;
+        playouts = 0;
+    }
+
+    /**
+     * Moves the root down to a later position of the same game, keeping what was learned about it. Works when every
+     * move played since the root leads to an expanded node, normally our own move and the opponent's reply.
+     *
+     * @param position  Connect4Bitboard
+     * @param redToMove boolean
+     * @return true if the tree now starts at the position, false if it is not in the tree and reset must be used
+     */
+    public boolean advance(Connect4Bitboard position, boolean redToMove) {
+        if (size == 0 || position.getMoveCount() < root.getMoveCount() || (root.getRed() & ~position.getRed()) != 0
+                || (root.getYellow() & ~position.getYellow()) != 0) {
+            return false;
+        }
+        board.copyFrom(root);
+        boolean red = rootIsRed;
+        int node = 0;
+        while (board.getMoveCount() < position.getMoveCount()) {
+            int next = -1;
+            for (int c = firstChild[node]; firstChild[node] != 0 && c < firstChild[node] + childCount[node]; c++) {
+                board.makeMove(column[c], red);
+                long mine = red ? board.getRed() : board.getYellow();
+                long target = red ? position.getRed() : position.getYellow();
+                board.undoMove(column[c]);
+                if ((mine & ~target) == 0) {
+                    next = c;
+                    break;
+                }
+            }
+            if (next < 0 || state[next] != OPEN) {
+                return false;
+            }
+            board.makeMove(column[next], red);
+            red = !red;
+            node = next;
+        }
+        if (red != redToMove) {
+            return false;
+        }
+        compact(node);
+        root.copyFrom(position);
+        rootIsRed = redToMove;
+        playouts = 0;
+        return true;
+    }
+
+    /**
+     * Runs one iteration: selection, expansion, playout and backpropagation.
+     */
+    public void iterate() {
+        board.copyFrom(root);
+        boolean red = rootIsRed; // The side to move at the current node.
+        int node = 0;
+        int depth = 0;
+        path[depth++] = node;
+        while (state[node] == OPEN) {
+            if (firstChild[node] == 0) {
+                if ((visits[node] == 0 && node != 0) || !expand(node, red)) {
+                    break; // A new leaf gets a playout before it gets children.
+                }
+            }
+            node = select(node);
+            board.makeMove(column[node], red);
+            red = !red;
+            path[depth++] = node;
+        }
+
+        double redScore;
+        if (state[node] == WON) {
+            redScore = red ? 0 : 1; // The player who just moved, not the one to move, won.
+        } else if (state[node] == DRAWN) {
+            redScore = 0.5;
+        } else {
+            redScore = playout(red);
+        }
+        playouts++;
+
+        visits[0]++;
+        for (int i = 1; i < depth; i++) {
+            int n = path[i];
+            boolean moverIsRed = (i % 2 == 1) == rootIsRed;
+            visits[n]++;
+            wins[n] += moverIsRed ? redScore : 1 - redScore;
+        }
+    }
+
+    /**
+     * @return the root's most visited column, or -1 if the root has no children yet.
+     */
+    public int bestMove() {
+        int best = -1;
+        int bestVisits = -1;
+        for (int c = firstChild[0]; c < firstChild[0] + childCount[0]; c++) {
+            if (visits[c] > bestVisits) {
+                bestVisits = visits[c];
+                best = column[c];
+            }
+        }
+        return firstChild[0] == 0 ? -1 : best;
+    }
+
+    /**
+     * Adds the visits of each root column to an array, so the trees of several threads can be combined.
+     *
+     * @param total int[] indexed by column
+     */
+    public void addRootVisits(int[] total) {
+        if (firstChild[0] == 0) {
+            return;
+        }
+        for (int c = firstChild[0]; c < firstChild[0] + childCount[0]; c++) {
+            total[column[c]] += visits[c];
+        }
+    }
+
+    /**
+     * @return the number of playouts since the last reset.
+     */
+    public long getPlayouts() {
+        return playouts;
+    }
+
+    /**
+     * @return the number of nodes in use.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param col int a column of the root
+     * @return the average result of the column for the side to move at the root, between 0 and 1, or 0.5 if it was
+     * never visited.
+     */
+    public double getValue(int col) {
+        for (int c = firstChild[0]; firstChild[0] != 0 && c < firstChild[0] + childCount[0]; c++) {
+            if (column[c] == col) {
+                return visits[c] == 0 ? 0.5 : wins[c] / visits[c];
+            }
+        }
+        return 0.5;
+    }
+
+    /**
+     * Copies the subtree under a node to the front of the pool, the node becoming the root. Nodes are renumbered in
+     * breadth-first order, which keeps the children of every node next to each other.
+     *
+     * @param node int the new root
+     */
+    private void compact(int node) {
+        int[] order = new int[size]; // Old node numbers in their new order.
+        int[] first = new int[size]; // New number of each node's first child.
+        order[0] = node;
+        int count = 1;
+        for (int i = 0; i < count; i++) {
+            int old = order[i];
+            first[i] = firstChild[old] == 0 ? 0 : count;
+            for (int c = firstChild[old]; firstChild[old] != 0 && c < firstChild[old] + childCount[old]; c++) {
+                order[count++] = c;
+            }
+        }
+        byte[] newCount = new byte[count];
+        byte[] newColumn = new byte[count];
+        byte[] newState = new byte[count];
+        int[] newVisits = new int[count];
+        double[] newWins = new double[count];
+        for (int i = 0; i < count; i++) {
+            newCount[i] = childCount[order[i]];
+            newColumn[i] = column[order[i]];
+            newState[i] = state[order[i]];
+            newVisits[i] = visits[order[i]];
+            newWins[i] = wins[order[i]];
+        }
+        System.arraycopy(first, 0, firstChild, 0, count);
+        System.arraycopy(newCount, 0, childCount, 0, count);
+        System.arraycopy(newColumn, 0, column, 0, count);
+        System.arraycopy(newState, 0, state, 0, count);
+        System.arraycopy(newVisits, 0, visits, 0, count);
+        System.arraycopy(newWins, 0, wins, 0, count);
+        size = count;
+    }
+
+    /**
+     * Adds a child for every open column of a node, marking the moves that win or fill the board.
+     *
+     * @param node int
+     * @param red  boolean the side to move at the node
+     * @return false if the pool is full
+     */
+    private boolean expand(int node, boolean red) {
+        int width = board.getColumnCount();
+        if (size + width > firstChild.length) {
+            return false;
+        }
+        int first = size;
+        for (int col = 0; col < width; col++) {
+            if (!board.canPlay(col)) {
+                continue;
+            }
+            int child = size++;
+            firstChild[child] = 0;
+            childCount[child] = 0;
+            column[child] = (byte) col;
+            visits[child] = 0;
+            wins[child] = 0;
+            state[child] = board.isWinningMove(col, red) ? WON
+                    : board.getMoveCount() + 1 == cells ? DRAWN : OPEN;
+        }
+        childCount[node] = (byte) (size - first);
+        firstChild[node] = first;
+        return true;
+    }
+
+    /**
+     * Picks the child with the highest UCT value. Unvisited children come first, and a winning move is always taken.
+     *
+     * @param node int
+     * @return the child
+     */
+    private int select(int node) {
+        double logVisits = Math.log(Math.max(1, visits[node]));
+        int best = -1;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (int c = firstChild[node]; c < firstChild[node] + childCount[node]; c++) {
+            if (state[c] == WON || visits[c] == 0) {
+                return c;
+            }
+            double value = wins[c] / visits[c] + EXPLORATION * Math.sqrt(logVisits / visits[c]);
+            if (value > bestValue) {
+                bestValue = value;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Plays random moves to the end of the game, taking any immediate win and blocking any immediate threat.
+     *
+     * @param red boolean the side to move
+     * @return 1 if red wins, 0 if yellow wins, 0.5 for a draw
+     */
+    private double playout(boolean red) {
+        while (board.getMoveCount() < cells) {
+            long playable = board.getPlayableMask();
+            if ((board.getWinningSlots(red) & playable) != 0) {
+                return red ? 1 : 0;
+            }
+            long threats = board.getWinningSlots(!red) & playable;
+            long choices = threats != 0 ? Long.lowestOneBit(threats) : playable;
+            int pick = nextInt(Long.bitCount(choices));
+            for (int i = 0; i < pick; i++) {
+                choices &= choices - 1;
+            }
+            board.makeMove(Long.numberOfTrailingZeros(choices) / stride, red);
+            red = !red;
+        }
+        return 0.5;
+    }
+
+    /**
+     * A xorshift random number below a bound.
+     *
+     * @param bound int
+     * @return int
+     */
+    private int nextInt(int bound) {
+        random ^= random << 13;
+        random ^= random >>> 7;
+        random ^= random << 17;
+        return (int) ((random >>> 33) * bound >>> 31);
+    }
+}
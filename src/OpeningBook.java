@@ -0,0 +1,366 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A read-only book of opening moves, worked out once by deep searches and kept in a file.
+ * <p>
+ * The file is a 16 byte header followed by fixed-size records sorted by position key: the key (8 bytes), the score
+ * of the best move from the side to move (4 bytes), the best column (1 byte) and a spare byte. The file is memory
+ * mapped and searched in place with a binary search, so opening a book is instant, it takes no heap, and one book
+ * can be shared by any number of agents and threads.
+ * <p>
+ * Keys are built from the tokens of the side to move, so a position and the same position with the colors swapped
+ * share a record, and only the lower of a position's key and its mirror image's key is stored, with the column
+ * mirrored to match. This keeps the book about half the size.
+ * <p>
+ * Usage: java OpeningBook [file] [plies] [depth] [threads] builds a 7x6 book of every position with fewer than plies
+ * tokens, each searched to depth.
+ */
+public class OpeningBook {
+
+    private static final int MAGIC = 0x43344248; // "C4BH"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int RECORD_BYTES = 14;
+
+    private final MappedByteBuffer buffer;
+    private final int columns;
+    private final int rows;
+    private final int plies;
+    private final int searchDepth;
+    private final int size;
+    private final int stride;
+    private final long bottom;
+
+    /**
+     * Maps a book file into memory and checks its header.
+     *
+     * @param file Path
+     * @throws IOException if the file cannot be read or is not a book
+     */
+    public OpeningBook(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < HEADER_BYTES || length > Integer.MAX_VALUE) {
+                throw new IOException(file + " is not an opening book");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if (buffer.getInt(0) != MAGIC || buffer.get(4) != VERSION) {
+            throw new IOException(file + " is not an opening book");
+        }
+        columns = buffer.get(5);
+        rows = buffer.get(6);
+        plies = buffer.get(7);
+        searchDepth = buffer.getInt(8);
+        size = buffer.getInt(12);
+        if (!Connect4Bitboard.fits(columns, rows) || (long) size * RECORD_BYTES + HEADER_BYTES != buffer.capacity()) {
+            throw new IOException(file + " is damaged");
+        }
+        stride = rows + 1;
+        bottom = bottomRow(columns, stride);
+    }
+
+    /**
+     * @return the number of positions in the book.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the book covers every position with fewer tokens than this.
+     */
+    public int getPlies() {
+        return plies;
+    }
+
+    /**
+     * @return the depth each position was searched to.
+     */
+    public int getSearchDepth() {
+        return searchDepth;
+    }
+
+    /**
+     * Looks up the best column for a position.
+     *
+     * @param board Connect4Bitboard
+     * @param isRed boolean true if red is to move
+     * @return the column, or -1 if the position is not in the book
+     */
+    public int getMove(Connect4Bitboard board, boolean isRed) {
+        if (!matches(board)) {
+            return -1;
+        }
+        long key = key(board, isRed);
+        long mirrored = mirror(key, columns, stride);
+        int index = find(Math.min(key, mirrored));
+        if (index < 0) {
+            return -1;
+        }
+        int col = buffer.get(HEADER_BYTES + index * RECORD_BYTES + 12);
+        return mirrored < key ? columns - 1 - col : col;
+    }
+
+    /**
+     * Looks up the score of the best move for a position, from the point of view of the side to move.
+     *
+     * @param board Connect4Bitboard
+     * @param isRed boolean true if red is to move
+     * @return the score, or 0 if the position is not in the book
+     */
+    public int getScore(Connect4Bitboard board, boolean isRed) {
+        if (!matches(board)) {
+            return 0;
+        }
+        long key = key(board, isRed);
+        int index = find(Math.min(key, mirror(key, columns, stride)));
+        return index < 0 ? 0 : buffer.getInt(HEADER_BYTES + index * RECORD_BYTES + 8);
+    }
+
+    /**
+     * @param board Connect4Bitboard
+     * @return true if the board is the size of the book and early enough to be in it.
+     */
+    private boolean matches(Connect4Bitboard board) {
+        return board.getColumnCount() == columns && board.getRowCount() == rows && board.getMoveCount() < plies;
+    }
+
+    /**
+     * Binary searches the records for a key.
+     *
+     * @param key long
+     * @return the index of the record, or -1 if there is none
+     */
+    private int find(long key) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midKey = buffer.getLong(HEADER_BYTES + mid * RECORD_BYTES);
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Builds the key of a position from the side to move: the filled slots plus the bottom row, which sets the first
+     * empty bit of each column, with the tokens of the side to move on top. Every column of the key only depends on
+     * the same column of the board, so mirroring the key mirrors the position.
+     *
+     * @param board Connect4Bitboard
+     * @param isRed boolean
+     * @return long
+     */
+    private long key(Connect4Bitboard board, boolean isRed) {
+        return (board.getMask() + bottom) | (isRed ? board.getRed() : board.getYellow());
+    }
+
+    /**
+     * Swaps the columns of a bitboard word left to right.
+     *
+     * @param bits    long
+     * @param columns int
+     * @param stride  int
+     * @return long
+     */
+    private static long mirror(long bits, int columns, int stride) {
+        long column = (1L << stride) - 1;
+        long mirrored = 0;
+        for (int col = 0; col < columns; col++) {
+            mirrored |= ((bits >>> (col * stride)) & column) << ((columns - 1 - col) * stride);
+        }
+        return mirrored;
+    }
+
+    /**
+     * @param columns int
+     * @param stride  int
+     * @return the bottom slot of every column.
+     */
+    private static long bottomRow(int columns, int stride) {
+        long b = 0;
+        for (int col = 0; col < columns; col++) {
+            b |= 1L << (col * stride);
+        }
+        return b;
+    }
+
+    /**
+     * Builds a book by searching every position with fewer than plies tokens with a MiniConnorMaxAgent. Positions that
+     * are already won are left out. The searches run in parallel, each with a single search thread.
+     *
+     * @param file    Path
+     * @param columns int
+     * @param rows    int
+     * @param plies   int
+     * @param depth   int
+     * @param threads int
+     * @throws IOException if the file cannot be written
+     */
+    public static void generate(Path file, int columns, int rows, int plies, int depth, int threads)
+            throws IOException {
+        if (!Connect4Bitboard.fits(columns, rows) || plies < 1 || plies > 127) {
+            throw new IllegalArgumentException("Cannot build a book of " + plies + " plies for a " + columns + "x"
+                    + rows + " board");
+        }
+        int stride = rows + 1;
+        long bottom = bottomRow(columns, stride);
+
+        // Collect one line of moves for every distinct position, red moving first.
+        Map<Long, int[]> positions = new HashMap<>();
+        List<int[]> level = new ArrayList<>();
+        level.add(new int[0]);
+        for (int ply = 0; ply < plies; ply++) {
+            List<int[]> next = new ArrayList<>();
+            for (int[] line : level) {
+                Connect4Bitboard board = play(line, columns, rows);
+                boolean isRed = line.length % 2 == 0;
+                long key = (board.getMask() + bottom) | (isRed ? board.getRed() : board.getYellow());
+                key = Math.min(key, mirror(key, columns, stride));
+                if (positions.putIfAbsent(key, line) != null) {
+                    continue;
+                }
+                for (int col = 0; col < columns; col++) {
+                    if (board.canPlay(col) && !board.isWinningMove(col, isRed) && ply + 1 < plies) {
+                        int[] longer = Arrays.copyOf(line, line.length + 1);
+                        longer[line.length] = col;
+                        next.add(longer);
+                    }
+                }
+            }
+            level = next;
+        }
+
+        long[] keys = new long[positions.size()];
+        int i = 0;
+        for (long key : positions.keySet()) {
+            keys[i++] = key;
+        }
+        Arrays.sort(keys);
+        System.out.println("Searching " + keys.length + " positions to depth " + depth + "...");
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<long[]>> futures = new ArrayList<>();
+            for (long key : keys) {
+                int[] line = positions.get(key);
+                futures.add(pool.submit(() -> searchPosition(line, key, columns, rows, depth)));
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                out.writeByte(columns);
+                out.writeByte(rows);
+                out.writeByte(plies);
+                out.writeInt(depth);
+                out.writeInt(keys.length);
+                for (int k = 0; k < keys.length; k++) {
+                    long[] result = futures.get(k).get();
+                    out.writeLong(keys[k]);
+                    out.writeInt((int) result[1]);
+                    out.writeByte((int) result[0]);
+                    out.writeByte(0);
+                    if ((k + 1) % 100 == 0) {
+                        System.out.println((k + 1) + "/" + keys.length);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Building the book was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A search failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Searches one position and returns its best column and score, the column mirrored if the key is the mirror
+     * image's.
+     *
+     * @param line    int[] the moves leading to the position, red first
+     * @param key     long the key stored in the book
+     * @param columns int
+     * @param rows    int
+     * @param depth   int
+     * @return long[] the column and the score
+     */
+    private static long[] searchPosition(int[] line, long key, int columns, int rows, int depth) {
+        Connect4Game game = new Connect4Game(columns, rows);
+        game.setRedPlayedFirst(true);
+        for (int k = 0; k < line.length; k++) {
+            game.makeMove(line[k], k % 2 == 0);
+        }
+        boolean isRed = line.length % 2 == 0;
+        Connect4Bitboard before = game.getBitboard();
+        MiniConnorMaxAgent agent = new MiniConnorMaxAgent(game, isRed, depth);
+        agent.setSolverThreshold(0);
+        agent.move();
+        Connect4Bitboard after = game.getBitboard();
+        int col = 0;
+        while (after.getHeight(col) == before.getHeight(col)) {
+            col++;
+        }
+        long own = (before.getMask() + bottomRow(columns, rows + 1)) | (isRed ? before.getRed() : before.getYellow());
+        if (own != key) { // The book holds the mirror image of this line.
+            col = columns - 1 - col;
+        }
+        return new long[]{col, agent.getScore()};
+    }
+
+    /**
+     * Plays a line of moves on an empty bitboard, red first.
+     *
+     * @param line    int[]
+     * @param columns int
+     * @param rows    int
+     * @return Connect4Bitboard
+     */
+    private static Connect4Bitboard play(int[] line, int columns, int rows) {
+        Connect4Bitboard board = new Connect4Bitboard(columns, rows);
+        for (int k = 0; k < line.length; k++) {
+            board.makeMove(line[k], k % 2 == 0);
+        }
+        return board;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path file = Paths.get(args.length > 0 ? args[0] : "opening.book");
+        int plies = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 12;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        long start = System.nanoTime();
+        generate(file, 7, 6, plies, depth, threads);
+        OpeningBook book = new OpeningBook(file);
+        System.out.println("Wrote " + book.size() + " positions to " + file + " in "
+                + (System.nanoTime() - start) / 1000000000 + " s");
+    }
+}
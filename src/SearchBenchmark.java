@@ -0,0 +1,150 @@
+import java.util.Arrays;
+
+/**
+ * Measures how MiniConnorMaxAgent's parallel search modes scale. Each position of a small suite is searched to a
+ * fixed depth with one thread, then with root splitting and with Lazy SMP on more threads, and the time, nodes per
+ * second per thread and speedup over one thread are printed. First the suite is searched on one thread with and
+ * without killer and history move ordering, to show how many nodes the ordering saves.
+ * <p>
+ * Usage: java SearchBenchmark [depth] [threads]
+ */
+public class SearchBenchmark {
+
+    // Opening lines given as the columns played in order, starting with red.
+    static final String[] POSITIONS = {"", "3", "33", "3323", "332354", "3232104", "44343", "2433350"};
+    // Middle game positions full of threats, only used to compare move ordering.
+    static final String[] TACTICAL = {"4500414411400113", "4542254452232013331135", "423045323322342445636421",
+            "260001223121120100"};
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        compareOrdering(depth);
+        compareAlgorithms(depth);
+
+        // Lazy SMP deepens one ply at a time, so it is compared with a single thread that deepens as well.
+        long single = run(depth, 1, false);
+        long split = run(depth, threads, false);
+        long singleDeepening = run(depth, 1, true);
+        long lazy = run(depth, threads, true);
+        System.out.printf("Speedup with %d threads: root split %.2fx, Lazy SMP %.2fx%n", threads,
+                single / (double) split, singleDeepening / (double) lazy);
+    }
+
+    /**
+     * Searches every position of the suite and the tactical positions on one thread three ways: with the plain
+     * middle-out order, with killers and history, and with the threat shortcuts as well. Prints the nodes and the
+     * share of cutoffs made by the first move tried.
+     *
+     * @param depth int
+     */
+    private static void compareOrdering(int depth) {
+        System.out.println("Move ordering, depth " + depth);
+        String row = "  %-24s %12s %7s %12s %7s %12s %7s%n";
+        System.out.printf(row, "", "plain", "first", "killers", "first", "threats", "first");
+        long[] totals = new long[3];
+        String[] all = Arrays.copyOf(POSITIONS, POSITIONS.length + TACTICAL.length);
+        System.arraycopy(TACTICAL, 0, all, POSITIONS.length, TACTICAL.length);
+        for (String moves : all) {
+            Object[] cells = new Object[7];
+            cells[0] = moves.isEmpty() ? "(start)" : moves;
+            for (int i = 0; i < 3; i++) {
+                Connect4Game game = position(moves);
+                MiniConnorMaxAgent agent = new MiniConnorMaxAgent(game, moves.length() % 2 == 0, depth);
+                agent.setSolverThreshold(0);
+                agent.setDynamicOrdering(i >= 1);
+                agent.setThreatShortcuts(i >= 2);
+                agent.move();
+                totals[i] += agent.getNodes();
+                cells[1 + 2 * i] = agent.getNodes();
+                cells[2 + 2 * i] = String.format("%.1f%%", agent.getFirstMoveCutoffRate() * 100);
+            }
+            System.out.printf(row, cells);
+        }
+        System.out.printf(row, "total", totals[0], "", totals[1], "", totals[2], "");
+        System.out.printf("  %.2fx fewer nodes with killers and history, %.2fx with threats as well%n%n",
+                totals[0] / (double) Math.max(1, totals[1]), totals[0] / (double) Math.max(1, totals[2]));
+    }
+
+    /**
+     * Searches the suite and the tactical positions on one thread with every search algorithm, and prints the nodes
+     * each one needed side by side.
+     *
+     * @param depth int
+     */
+    private static void compareAlgorithms(int depth) {
+        System.out.println("Search algorithms, depth " + depth);
+        MinimaxSearch.Algorithm[] algorithms = MinimaxSearch.Algorithm.values();
+        StringBuilder header = new StringBuilder(String.format("  %-24s", ""));
+        for (MinimaxSearch.Algorithm algorithm : algorithms) {
+            header.append(String.format(" %12s", algorithm));
+        }
+        System.out.println(header);
+        long[] totals = new long[algorithms.length];
+        String[] all = Arrays.copyOf(POSITIONS, POSITIONS.length + TACTICAL.length);
+        System.arraycopy(TACTICAL, 0, all, POSITIONS.length, TACTICAL.length);
+        for (String moves : all) {
+            StringBuilder line = new StringBuilder(String.format("  %-24s", moves.isEmpty() ? "(start)" : moves));
+            for (int i = 0; i < algorithms.length; i++) {
+                Connect4Game game = position(moves);
+                MiniConnorMaxAgent agent = new MiniConnorMaxAgent(game, moves.length() % 2 == 0, depth);
+                agent.setSolverThreshold(0);
+                agent.setAlgorithm(algorithms[i]);
+                agent.move();
+                totals[i] += agent.getNodes();
+                line.append(String.format(" %12d", agent.getNodes()));
+            }
+            System.out.println(line);
+        }
+        StringBuilder total = new StringBuilder(String.format("  %-24s", "total"));
+        for (long nodes : totals) {
+            total.append(String.format(" %12d", nodes));
+        }
+        System.out.println(total);
+        System.out.println();
+    }
+
+    /**
+     * Searches every position of the suite once and prints one line per position.
+     *
+     * @param depth   int
+     * @param threads int
+     * @param lazySmp boolean
+     * @return the total time in nanoseconds
+     */
+    private static long run(int depth, int threads, boolean lazySmp) {
+        System.out.println(threads + (threads == 1 ? " thread, " : " threads, ")
+                + (lazySmp ? "Lazy SMP" : "root split") + ", depth " + depth);
+        long total = 0;
+        for (String moves : POSITIONS) {
+            Connect4Game game = position(moves);
+            MiniConnorMaxAgent agent = new MiniConnorMaxAgent(game, moves.length() % 2 == 0, depth);
+            agent.setParallelism(threads);
+            agent.setLazySmp(lazySmp);
+            agent.move();
+            total += agent.getMoveNanos();
+            System.out.printf("  %-8s %7d ms %12d nodes  nps per thread %s%n", moves.isEmpty() ? "(start)" : moves,
+                    agent.getMoveNanos() / 1000000, agent.getNodes(),
+                    Arrays.toString(agent.getNodesPerSecond()));
+            agent.setParallelism(1); // Lets the pool threads finish.
+        }
+        System.out.printf("  total    %7d ms%n%n", total / 1000000);
+        return total;
+    }
+
+    /**
+     * Builds a 7x6 game from a string of column numbers, red moving first.
+     *
+     * @param moves String
+     * @return Connect4Game
+     */
+    static Connect4Game position(String moves) {
+        Connect4Game game = new Connect4Game(7, 6);
+        game.setRedPlayedFirst(true);
+        for (int i = 0; i < moves.length(); i++) {
+            game.makeMove(moves.charAt(i) - '0', i % 2 == 0);
+        }
+        return game;
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * Measures the endgame solver on a fixed suite of 7x6 positions, from easy late positions to ones with more than 30
+ * empty slots. Each position is solved from an empty transposition table, and the proven result, nodes, time and
+ * speed are printed.
+ * <p>
+ * Usage: java SolverBenchmark [table megabytes]
+ */
+public class SolverBenchmark {
+
+    // Positions given as the columns played in order, starting with red. Taken from self-play games.
+    static final String[] POSITIONS = {
+            "364103344343254451211531100000",
+            "66131011333450453445655434",
+            "4542254452232013331135",
+            "4500414411400113",
+            "45004144114",
+            "3641033443",
+            "36410334",
+            "450041441"};
+
+    public static void main(String[] args) {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+
+        long totalNanos = 0;
+        long totalNodes = 0;
+        System.out.printf("%-32s %6s %-12s %12s %9s %12s%n", "Position", "Empty", "Result", "Nodes", "Time", "nps");
+        for (String moves : POSITIONS) {
+            Connect4Game game = SearchBenchmark.position(moves);
+            EndgameSolver solver = new EndgameSolver(game.getBitboard(), new TranspositionTable(megabytes));
+            boolean redToMove = moves.length() % 2 == 0;
+            long start = System.nanoTime();
+            int score = solver.solve(redToMove, Long.MAX_VALUE);
+            long nanos = System.nanoTime() - start;
+            totalNanos += nanos;
+            totalNodes += solver.getNodes();
+            System.out.printf("%-32s %6d %-12s %12d %6d ms %12d%n", moves, 42 - moves.length(),
+                    solver.describe(score, moves.length()), solver.getNodes(), nanos / 1000000,
+                    solver.getNodes() * 1000000000L / Math.max(1, nanos));
+        }
+        System.out.printf("%-32s %6s %-12s %12d %6d ms %12d%n", "Total", "", "", totalNodes, totalNanos / 1000000,
+                totalNodes * 1000000000L / Math.max(1, totalNanos));
+    }
+}
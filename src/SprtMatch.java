@@ -0,0 +1,270 @@
+import java.util.Random;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A sequential probability ratio test between two agents, used to tell whether a change made an engine stronger.
+ * <p>
+ * Games are played in pairs: both games start from the same random opening, and the agents swap colors for the second
+ * one, so luck in the opening cancels out. Each pair scores 0, 0.25, 0.5, 0.75 or 1 for the test agent. After every
+ * pair the log-likelihood ratio of H1 (the test agent is elo1 stronger) against H0 (it is elo0 stronger) is updated
+ * with the normalized approximation of the generalized SPRT, and the match stops as soon as it crosses one of the
+ * bounds set by alpha and beta. Pairs run in parallel on a thread pool.
+ * <p>
+ * Usage: java SprtMatch [elo0] [elo1] [max pairs] [threads]
+ */
+public class SprtMatch {
+
+    private static final double PRIOR_PAIRS = 2; // Virtual pairs added to the variance estimate.
+
+    private final AgentFactory test; // The agent under test, for example a new evaluation.
+    private final AgentFactory base; // The agent it is compared with.
+    private final double elo0;
+    private final double elo1;
+    private final double lowerBound; // Accept H0 at or below this LLR.
+    private final double upperBound; // Accept H1 at or above this LLR.
+    private int openingPlies = 4; // Random moves played before the agents take over.
+
+    /**
+     * Constructs a test with the given hypotheses and error rates.
+     *
+     * @param test  AgentFactory
+     * @param base  AgentFactory
+     * @param elo0  double the Elo difference of H0
+     * @param elo1  double the Elo difference of H1
+     * @param alpha double the chance of accepting H1 when H0 is true
+     * @param beta  double the chance of accepting H0 when H1 is true
+     */
+    public SprtMatch(AgentFactory test, AgentFactory base, double elo0, double elo1, double alpha, double beta) {
+        if (elo1 <= elo0) {
+            throw new IllegalArgumentException("elo1 must be above elo0, got " + elo0 + " and " + elo1);
+        }
+        this.test = test;
+        this.base = base;
+        this.elo0 = elo0;
+        this.elo1 = elo1;
+        this.lowerBound = Math.log(beta / (1 - alpha));
+        this.upperBound = Math.log((1 - beta) / alpha);
+    }
+
+    /**
+     * Sets how many random moves each opening has.
+     *
+     * @param plies int at least 0 and less than the 42 slots of the board
+     */
+    public void setOpeningPlies(int plies) {
+        if (plies < 0 || plies >= 7 * 6) {
+            throw new IllegalArgumentException("Opening plies must be between 0 and 41, got " + plies);
+        }
+        this.openingPlies = plies;
+    }
+
+    /**
+     * Plays pairs of games until the test is decided or maxPairs have been played.
+     *
+     * @param maxPairs int
+     * @param threads  int
+     * @param seed     long decides the openings
+     * @return the outcome of the test
+     */
+    public Result run(int maxPairs, int threads, long seed) {
+        Random openings = new Random(seed);
+        Result result = new Result();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CompletionService<Double> completed = new ExecutorCompletionService<>(pool);
+        try {
+            int submitted = 0;
+            for (; submitted < Math.min(threads, maxPairs); submitted++) {
+                int[] opening = randomOpening(openings);
+                completed.submit(() -> playPair(opening));
+            }
+            while (result.pairs < submitted) {
+                result.add(completed.take().get());
+                if (result.llr <= lowerBound || result.llr >= upperBound) {
+                    break;
+                }
+                if (submitted < maxPairs) {
+                    int[] opening = randomOpening(openings);
+                    completed.submit(() -> playPair(opening));
+                    submitted++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("The match was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A game failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return result;
+    }
+
+    /**
+     * Plays the same opening twice with the colors swapped.
+     *
+     * @param opening int[]
+     * @return the test agent's score over both games, from 0 to 1
+     */
+    private double playPair(int[] opening) {
+        double first = playGame(test, base, opening);
+        double second = 1 - playGame(base, test, opening);
+        return (first + second) / 2;
+    }
+
+    /**
+     * Plays one game from an opening, red moving first.
+     *
+     * @param red     AgentFactory
+     * @param yellow  AgentFactory
+     * @param opening int[]
+     * @return red's score: 1 for a win, 0.5 for a draw, 0 for a loss
+     */
+    private double playGame(AgentFactory red, AgentFactory yellow, int[] opening) {
+        Connect4Game game = new Connect4Game(7, 6);
+        GameRunner runner = new GameRunner(game, red.create(game, true), yellow.create(game, false));
+        runner.newGame(true, opening);
+        char winner = runner.playToEnd();
+        if (!runner.getValidationError().isEmpty()) {
+            // An invalid move loses the game for whoever made it; the runner has already passed the turn on.
+            return runner.isRedPlayerTurn() ? 1 : 0;
+        }
+        return winner == 'R' ? 1 : winner == 'Y' ? 0 : 0.5;
+    }
+
+    /**
+     * Picks random legal moves for the opening, red first. A move that would complete four in a row is never picked,
+     * so the game is still open when the agents take over. If a long opening runs into a position where every move
+     * wins, it is drawn again from the start.
+     *
+     * @param r Random
+     * @return int[]
+     */
+    private int[] randomOpening(Random r) {
+        int[] opening = new int[openingPlies];
+        Connect4Bitboard board = new Connect4Bitboard(7, 6);
+        int[] choices = new int[7];
+        for (int i = 0; i < openingPlies; i++) {
+            boolean red = i % 2 == 0;
+            int count = 0;
+            for (int col = 0; col < 7; col++) {
+                if (board.canPlay(col) && !board.isWinningMove(col, red)) {
+                    choices[count++] = col;
+                }
+            }
+            if (count == 0) {
+                board.clear();
+                i = -1;
+                continue;
+            }
+            opening[i] = choices[r.nextInt(count)];
+            board.makeMove(opening[i], red);
+        }
+        return opening;
+    }
+
+    /**
+     * Converts an Elo difference to the expected score.
+     *
+     * @param elo double
+     * @return double
+     */
+    static double expectedScore(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    /**
+     * The state of a test: the pairs played so far, their pentanomial distribution and the log-likelihood ratio.
+     */
+    public class Result {
+
+        private final int[] pentanomial = new int[5]; // Pairs scoring 0, 0.25, 0.5, 0.75 and 1.
+        private int pairs;
+        private double sum;
+        private double sumSquares;
+        private double llr;
+
+        /**
+         * Adds a pair and updates the log-likelihood ratio.
+         *
+         * @param score double
+         */
+        void add(double score) {
+            pentanomial[(int) Math.round(score * 4)]++;
+            pairs++;
+            sum += score;
+            sumSquares += score * score;
+            double mean = sum / pairs;
+            // The variance also counts PRIOR_PAIRS virtual pairs spread over the five outcomes, so a few lopsided
+            // pairs at the start cannot make it look tiny and end the test early.
+            double spread = 0;
+            for (int k = 0; k < 5; k++) {
+                spread += PRIOR_PAIRS / 5 * (k / 4.0 - mean) * (k / 4.0 - mean);
+            }
+            double variance = (sumSquares - pairs * mean * mean + spread) / (pairs + PRIOR_PAIRS);
+            double s0 = expectedScore(elo0);
+            double s1 = expectedScore(elo1);
+            llr = pairs * (s1 - s0) * (2 * mean - s0 - s1) / (2 * variance);
+        }
+
+        /**
+         * @return true if H1 was accepted, so the test agent is stronger.
+         */
+        public boolean acceptedH1() {
+            return llr >= upperBound;
+        }
+
+        /**
+         * @return true if H0 was accepted.
+         */
+        public boolean acceptedH0() {
+            return llr <= lowerBound;
+        }
+
+        /**
+         * @return the number of game pairs played.
+         */
+        public int getPairs() {
+            return pairs;
+        }
+
+        /**
+         * @return the log-likelihood ratio of H1 against H0.
+         */
+        public double getLlr() {
+            return llr;
+        }
+
+        /**
+         * @return the Elo difference implied by the test agent's average score.
+         */
+        public double getElo() {
+            double mean = Math.min(Math.max(sum / Math.max(1, pairs), 1e-6), 1 - 1e-6);
+            return -400 * Math.log10(1 / mean - 1);
+        }
+
+        @Override
+        public String toString() {
+            String verdict = acceptedH1() ? "H1 accepted" : acceptedH0() ? "H0 accepted" : "inconclusive";
+            return String.format("%s after %d pairs: LLR %.2f [%.2f, %.2f], Elo %.1f, pairs 0/0.25/0.5/0.75/1 = "
+                            + "%d/%d/%d/%d/%d (elo0 %.1f, elo1 %.1f)", verdict, pairs, llr, lowerBound, upperBound,
+                    getElo(), pentanomial[0], pentanomial[1], pentanomial[2], pentanomial[3], pentanomial[4], elo0,
+                    elo1);
+        }
+    }
+
+    public static void main(String[] args) {
+        double elo0 = args.length > 0 ? Double.parseDouble(args[0]) : 0;
+        double elo1 = args.length > 1 ? Double.parseDouble(args[1]) : 20;
+        int maxPairs = args.length > 2 ? Integer.parseInt(args[2]) : 5000;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        // Compare the engine at two depths; swap in any two configurations to test a change.
+        SprtMatch match = new SprtMatch((g, iAmRed) -> new MiniConnorMaxAgent(g, iAmRed, 6),
+                (g, iAmRed) -> new MiniConnorMaxAgent(g, iAmRed, 4), elo0, elo1, 0.05, 0.05);
+        System.out.println(match.run(maxPairs, threads, System.nanoTime()));
+    }
+}
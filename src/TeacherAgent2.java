@@ -300,6 +300,7 @@ public class TeacherAgent2 extends Agent {
                         continue;
                     }
                     spot = j - 1;
+                    break;
                 }
                 int count = 0;
                 int col = i - 1;
@@ -392,6 +393,7 @@ public class TeacherAgent2 extends Agent {
                         continue;
                     }
                     spot = j - 1;
+                    break;
                 }
                 int count = 0;
                 int col = i - 1;
@@ -0,0 +1,226 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Plays many independent games between two agents at the same time.
+ * Every game gets its own Connect4Game and new agents from the factories, and is played by a GameRunner on a fixed
+ * thread pool. Each game decides its first player with its own Random, seeded from the tournament seed before any game
+ * starts, so a run can be repeated exactly whatever the number of threads.
+ */
+public class Tournament {
+
+    private final AgentFactory red; // Builds the red player of every game.
+    private final AgentFactory yellow; // Builds the yellow player of every game.
+    private final int columns;
+    private final int rows;
+
+    /**
+     * Constructs a tournament on the standard 7x6 board.
+     *
+     * @param red    AgentFactory
+     * @param yellow AgentFactory
+     */
+    public Tournament(AgentFactory red, AgentFactory yellow) {
+        this(red, yellow, 7, 6);
+    }
+
+    /**
+     * Constructs a tournament on a board of the given size.
+     *
+     * @param red     AgentFactory
+     * @param yellow  AgentFactory
+     * @param columns int
+     * @param rows    int
+     */
+    public Tournament(AgentFactory red, AgentFactory yellow, int columns, int rows) {
+        this.red = red;
+        this.yellow = yellow;
+        this.columns = columns;
+        this.rows = rows;
+    }
+
+    /**
+     * Plays a number of games on a pool of threads and waits for all of them.
+     *
+     * @param games   int
+     * @param threads int
+     * @param seed    long
+     * @return the combined results
+     */
+    public Results play(int games, int threads, long seed) {
+        if (games < 1 || threads < 1) {
+            throw new IllegalArgumentException("Need at least one game and one thread, got " + games + " and " + threads);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            Random seeds = new Random(seed);
+            List<Future<Results>> futures = new ArrayList<>();
+            for (int i = 0; i < games; i++) {
+                long gameSeed = seeds.nextLong();
+                futures.add(pool.submit(() -> playOne(gameSeed)));
+            }
+            Results total = new Results();
+            for (Future<Results> future : futures) {
+                total.add(future.get());
+            }
+            return total;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("The tournament was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A game failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Plays a single game. Other drivers that schedule games themselves, such as League, call this from their own
+     * threads.
+     *
+     * @param seed long decides who plays first
+     * @return the results of that one game
+     */
+    Results playOne(long seed) {
+        Connect4Game game = new Connect4Game(columns, rows);
+        Agent redPlayer = red.create(game, true);
+        Agent yellowPlayer = yellow.create(game, false);
+        GameRunner runner = new GameRunner(game, redPlayer, yellowPlayer, new Random(seed));
+        runner.newGame();
+        char winner = runner.playToEnd();
+        Results result = new Results();
+        char offender = 'N';
+        if (!runner.getValidationError().isEmpty()) {
+            // The runner has already passed the turn on, so the player to move is the one who did not cheat.
+            offender = runner.isRedPlayerTurn() ? 'Y' : 'R';
+        }
+        result.record(game.getRedPlayedFirst(), winner, offender);
+        return result;
+    }
+
+    /**
+     * Wins, losses and draws of a tournament, in total and split by which player moved first. A game stopped by an
+     * invalid move is counted as invalid, and scored as a loss for the player who made the move.
+     */
+    public static class Results {
+
+        private static final int RED = 0, YELLOW = 1, DRAW = 2, INVALID = 3;
+
+        private final int[][] counts = new int[2][4]; // [red moved first ? 0 : 1][outcome]
+        private final int[] forfeits = new int[2]; // Invalid games by who made the invalid move, [red, yellow].
+
+        /**
+         * Records one game.
+         *
+         * @param redFirst boolean
+         * @param winner   char 'R', 'Y' or 'N'
+         * @param offender char 'R' or 'Y' for the player whose invalid move stopped the game, 'N' if every move was
+         *                 valid
+         */
+        void record(boolean redFirst, char winner, char offender) {
+            int outcome = offender != 'N' ? INVALID : winner == 'R' ? RED : winner == 'Y' ? YELLOW : DRAW;
+            counts[redFirst ? 0 : 1][outcome]++;
+            if (offender != 'N') {
+                forfeits[offender == 'R' ? 0 : 1]++;
+            }
+        }
+
+        /**
+         * Adds the games of another result to this one.
+         *
+         * @param other Results
+         */
+        void add(Results other) {
+            for (int i = 0; i < 2; i++) {
+                for (int j = 0; j < 4; j++) {
+                    counts[i][j] += other.counts[i][j];
+                }
+                forfeits[i] += other.forfeits[i];
+            }
+        }
+
+        /**
+         * @return the number of games won by red.
+         */
+        public int getRedWins() {
+            return counts[0][RED] + counts[1][RED];
+        }
+
+        /**
+         * @return the number of games won by yellow.
+         */
+        public int getYellowWins() {
+            return counts[0][YELLOW] + counts[1][YELLOW];
+        }
+
+        /**
+         * @return the number of drawn games.
+         */
+        public int getDraws() {
+            return counts[0][DRAW] + counts[1][DRAW];
+        }
+
+        /**
+         * @return the number of games stopped by an invalid move.
+         */
+        public int getInvalid() {
+            return counts[0][INVALID] + counts[1][INVALID];
+        }
+
+        /**
+         * @param red boolean
+         * @return the number of games stopped by an invalid move of red, or of yellow.
+         */
+        public int getForfeits(boolean red) {
+            return forfeits[red ? 0 : 1];
+        }
+
+        /**
+         * @return the number of games played.
+         */
+        public int getGames() {
+            return getRedWins() + getYellowWins() + getDraws() + getInvalid();
+        }
+
+        /**
+         * @return red's score as a fraction: a win or an invalid move by yellow counts 1 and a draw 0.5.
+         */
+        public double getRedScore() {
+            return getGames() == 0 ? 0 : (getRedWins() + getForfeits(false) + getDraws() / 2.0) / getGames();
+        }
+
+        /**
+         * Gets the count of one outcome for games with a given first player.
+         *
+         * @param redFirst boolean
+         * @param winner   char 'R', 'Y', 'N' for a draw or 'X' for an invalid move
+         * @return int
+         */
+        public int getCount(boolean redFirst, char winner) {
+            int outcome = winner == 'R' ? RED : winner == 'Y' ? YELLOW : winner == 'X' ? INVALID : DRAW;
+            return counts[redFirst ? 0 : 1][outcome];
+        }
+
+        @Override
+        public String toString() {
+            String format = "%-14s%8s%8s%8s%8s%n";
+            StringBuilder sb = new StringBuilder(String.format(format, "", "Red", "Yellow", "Draw", "Invalid"));
+            sb.append(String.format(format, "Red first", counts[0][RED], counts[0][YELLOW], counts[0][DRAW],
+                    counts[0][INVALID]));
+            sb.append(String.format(format, "Yellow first", counts[1][RED], counts[1][YELLOW], counts[1][DRAW],
+                    counts[1][INVALID]));
+            sb.append(String.format(format, "Total", getRedWins(), getYellowWins(), getDraws(), getInvalid()));
+            if (getInvalid() > 0) {
+                sb.append(String.format("Invalid moves: %d by red, %d by yellow%n", getForfeits(true),
+                        getForfeits(false)));
+            }
+            sb.append(String.format("Red score: %.1f%% of %d games", getRedScore() * 100, getGames()));
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,237 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size hash table of searched positions.
+ * Every entry remembers how deep a position was searched, whether the score is exact or only a bound, the score
+ * itself and the best column found. The table size is always a power of two so the slot of a key is found with a
+ * shift instead of a division.
+ * <p>
+ * Entries are stored as two longs in flat arrays, the position key and a packed data word, so probing never
+ * allocates. The data word can be taken apart with the static score, depth, flag and move methods.
+ * <p>
+ * One table can be shared by several searching threads without locks. Each long is written atomically, and the key
+ * is stored xor-ed with its data word, so an entry torn by two threads writing at once no longer matches its key and
+ * reads as a miss. The statistics counters are not synchronized and are only approximate while shared.
+ * <p>
+ * Entries do not depend on the position the search started from, so the table can be kept from one move to the
+ * next. Each entry is stamped with the generation it was stored in, and newSearch() starts a new generation: entries
+ * left over from earlier moves still answer probes, but give way to any new entry that needs their slot.
+ */
+public class TranspositionTable {
+
+    public static final int EXACT = 0; // The score is the exact value of the position.
+    public static final int LOWER = 1; // The real value is at least the score (the search failed high).
+    public static final int UPPER = 2; // The real value is at most the score (the search failed low).
+
+    private static final int ENTRY_BYTES = 2 * Long.BYTES;
+    private static final long VALID = 1L << 50; // Set on every stored entry so an empty slot reads as 0.
+    private static final int GENERATION_SHIFT = 51; // Position of the 8 bit generation in the data word.
+
+    private final AtomicLongArray keys; // Position key xor data word of each entry.
+    private final AtomicLongArray data;
+    private final int shift;
+    private int generation; // Stamped on every entry stored, counts up modulo 256.
+    private long probes;
+    private long hits;
+    private long collisions;
+    private int used;
+
+    /**
+     * Constructs a table that uses at most the given amount of memory. The number of entries is rounded down to a
+     * power of two.
+     *
+     * @param megabytes int
+     */
+    public TranspositionTable(int megabytes) {
+        if (megabytes <= 0) {
+            throw new IllegalArgumentException("The table needs at least 1 MB, got " + megabytes);
+        }
+        long entries = Long.highestOneBit((long) megabytes * 1024 * 1024 / ENTRY_BYTES);
+        entries = Math.min(entries, 1 << 30);
+        keys = new AtomicLongArray((int) entries);
+        data = new AtomicLongArray((int) entries);
+        shift = Long.SIZE - Long.numberOfTrailingZeros(entries);
+    }
+
+    /**
+     * Looks up a position.
+     *
+     * @param key long
+     * @return the packed data word of the entry, or 0 if the position is not in the table.
+     */
+    public long probe(long key) {
+        probes++;
+        int index = index(key);
+        long entry = data.getOpaque(index);
+        long stored = keys.getOpaque(index) ^ entry;
+        if (stored == key) {
+            hits++;
+            return entry;
+        }
+        if (entry != 0) {
+            collisions++;
+        }
+        return 0;
+    }
+
+    /**
+     * Stores the result of a search. A slot holding another position from the current generation is only replaced
+     * if the new search was at least as deep, so the expensive entries near the root survive the flood of shallow
+     * ones. Entries from earlier generations are always replaced.
+     *
+     * @param key   long
+     * @param depth int
+     * @param flag  int EXACT, LOWER or UPPER
+     * @param score int
+     * @param move  int the best column, or -1 if there is none.
+     */
+    public void store(long key, int depth, int flag, int score, int move) {
+        int index = index(key);
+        long old = data.getOpaque(index);
+        if (old == 0) {
+            used++;
+        } else if ((keys.getOpaque(index) ^ old) != key && depth(old) > depth && generation(old) == generation) {
+            return;
+        }
+        long entry = (score & 0xFFFFFFFFL) | ((long) (depth & 0xFF) << 32) | ((long) flag << 40)
+                | ((long) ((move + 1) & 0xFF) << 42) | VALID | ((long) generation << GENERATION_SHIFT);
+        keys.setOpaque(index, key ^ entry);
+        data.setOpaque(index, entry);
+    }
+
+    /**
+     * Starts a new generation, normally once per move. The entries already stored are kept, but are replaced by new
+     * ones whatever their depth.
+     */
+    public void newSearch() {
+        generation = (generation + 1) & 0xFF;
+    }
+
+    /**
+     * @return the current generation, between 0 and 255.
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Empties the table and resets its statistics.
+     */
+    public void clear() {
+        for (int i = 0; i < keys.length(); i++) {
+            keys.setPlain(i, 0);
+            data.setPlain(i, 0);
+        }
+        used = 0;
+        resetStats();
+    }
+
+    /**
+     * Resets the hit and collision counters.
+     */
+    public void resetStats() {
+        probes = 0;
+        hits = 0;
+        collisions = 0;
+    }
+
+    /**
+     * @return the number of entries in the table.
+     */
+    public int size() {
+        return keys.length();
+    }
+
+    /**
+     * @return the number of lookups since the statistics were reset.
+     */
+    public long getProbes() {
+        return probes;
+    }
+
+    /**
+     * @return the number of lookups that found their position.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of lookups that found a different position in their slot.
+     */
+    public long getCollisions() {
+        return collisions;
+    }
+
+    /**
+     * @return the share of lookups that found their position, between 0 and 1.
+     */
+    public double getHitRate() {
+        return probes == 0 ? 0 : hits / (double) probes;
+    }
+
+    /**
+     * @return the share of slots in use, between 0 and 1.
+     */
+    public double getFillRatio() {
+        return used / (double) keys.length();
+    }
+
+    /**
+     * @return a one line summary of the table statistics.
+     */
+    public String report() {
+        return String.format("TT hits %.1f%% (%d/%d), collisions %d, fill %.1f%% of %d entries",
+                getHitRate() * 100, hits, probes, collisions, getFillRatio() * 100, keys.length());
+    }
+
+    /**
+     * @param entry long a data word returned by probe
+     * @return the stored score.
+     */
+    public static int score(long entry) {
+        return (int) entry;
+    }
+
+    /**
+     * @param entry long a data word returned by probe
+     * @return the stored search depth.
+     */
+    public static int depth(long entry) {
+        return (int) (entry >>> 32) & 0xFF;
+    }
+
+    /**
+     * @param entry long a data word returned by probe
+     * @return the stored bound type, EXACT, LOWER or UPPER.
+     */
+    public static int flag(long entry) {
+        return (int) (entry >>> 40) & 0x3;
+    }
+
+    /**
+     * @param entry long a data word returned by probe
+     * @return the stored best column, or -1 if there is none.
+     */
+    public static int move(long entry) {
+        return ((int) (entry >>> 42) & 0xFF) - 1;
+    }
+
+    /**
+     * @param entry long a data word returned by probe
+     * @return the generation the entry was stored in.
+     */
+    public static int generation(long entry) {
+        return (int) (entry >>> GENERATION_SHIFT) & 0xFF;
+    }
+
+    /**
+     * Finds the slot of a key with a multiplicative hash.
+     *
+     * @param key long
+     * @return int
+     */
+    private int index(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+}